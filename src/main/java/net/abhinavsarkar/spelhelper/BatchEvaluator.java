@@ -0,0 +1,267 @@
+/* Copyright 2010 Abhinav Sarkar <abhinav@abhinavsarkar.net>
+ *
+ * This file is a part of SpelHelper library.
+ *
+ * SpelHelper library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License (GNU LGPL) as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * SpelHelper library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with SpelHelper library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.abhinavsarkar.spelhelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelEvaluationException;
+import org.springframework.expression.spel.SpelMessage;
+import org.springframework.util.Assert;
+
+/**
+ * Evaluates SpEL expressions which look up values through {@link BatchLoader}s,
+ * coalescing the lookups made for a batch of root elements into a single call
+ * to each loader.
+ *
+ * A loader registered with the name `name` is available in the expressions as
+ * the variable `#name`, and a value is looked up with `#name.load(key)`.
+ *
+ * Example:
+ *
+ *     BatchEvaluator evaluator = new BatchEvaluator(new SpelHelper(), 10)
+ *         .registerLoader("customers", customerLoader);
+ *     List<String> tiers = evaluator.evalBatch(
+ *         "#customers.load(customerId).tier", orders, String.class);
+ *
+ * The expression is evaluated in rounds. In a round, a lookup of a key which
+ * has not been loaded yet records the key and gives back null, and the
+ * evaluations which made such lookups are discarded. After the round, the
+ * recorded keys of all the root elements are loaded with one call to each
+ * loader, the loaders being called concurrently, and the discarded
+ * evaluations are run again. So the lookups of all the root elements are
+ * coalesced, and a chain of dependent lookups takes one round per lookup.
+ * Within one evaluation, the lookups are collected until the first missing
+ * value is used.
+ *
+ * The loaded values are shared by the root elements of a batch and are not
+ * kept across batches. The expressions must be free of side effects, as they
+ * may be evaluated more than once. The instances of this class are thread safe.
+ *
+ * @author Abhinav Sarkar _abhinav@abhinavsarkar.net_
+ */
+public final class BatchEvaluator {
+
+    private final SpelHelper spelHelper;
+    private final int maxRounds;
+    private final Map<String, BatchLoader<?, ?>> loaders =
+        new ConcurrentHashMap<String, BatchLoader<?, ?>>();
+
+    /**
+     * Creates a batch evaluator.
+     * @param spelHelper    The SpelHelper to parse and evaluate the expressions with.
+     * @param maxRounds The maximum number of rounds of evaluation for a batch.
+     */
+    public BatchEvaluator(final SpelHelper spelHelper, final int maxRounds) {
+        Assert.notNull(spelHelper, "spelHelper is null");
+        Assert.isTrue(maxRounds > 0, "maxRounds should be more than 0");
+        this.spelHelper = spelHelper;
+        this.maxRounds = maxRounds;
+    }
+
+    /**
+     * Registers the loader `loader` as the variable `#name`.
+     * @param name  The name of the variable.
+     * @param loader    The loader.
+     * @return  The current instance of BatchEvaluator. This is for chaining
+     * the methods calls.
+     */
+    public BatchEvaluator registerLoader(final String name, final BatchLoader<?, ?> loader) {
+        Assert.notNull(name, "name is null");
+        Assert.notNull(loader, "loader is null");
+        loaders.put(name, loader);
+        return this;
+    }
+
+    /**
+     * Evaluates a SpEL expression `expressionString` in the context of root
+     * element `rootElement` and gives back a result of type `desiredType`.
+     * @param <T>   The type of the result desired.
+     * @param expressionString  The SpEL expression to evaluate.
+     * @param rootElement   The root element in context of which the expression
+     * is to be evaluated.
+     * @param desiredType   The class of the result desired.
+     * @return  The result of the evaluation of the expression.
+     * @throws IllegalStateException if the lookups are not resolved in the
+     * maximum number of rounds.
+     */
+    public <T> T evalExpression(final String expressionString,
+            final Object rootElement, final Class<T> desiredType) {
+        return evalBatch(expressionString,
+                Collections.singletonList(rootElement), desiredType).get(0);
+    }
+
+    /**
+     * Evaluates a SpEL expression `expressionString` in the context of each
+     * of the root elements `rootElements`, coalescing their lookups, and gives
+     * back the results of type `desiredType`.
+     * @param <T>   The type of the results desired.
+     * @param expressionString  The SpEL expression to evaluate.
+     * @param rootElements  The root elements in context of which the expression
+     * is to be evaluated.
+     * @param desiredType   The class of the results desired.
+     * @return  The results of the evaluation of the expression in the order
+     * of the root elements.
+     * @throws IllegalStateException if the lookups are not resolved in the
+     * maximum number of rounds.
+     */
+    public <T> List<T> evalBatch(final String expressionString,
+            final List<?> rootElements, final Class<T> desiredType) {
+        Assert.notNull(rootElements, "rootElements is null");
+        Expression expression = spelHelper.parseExpression(expressionString);
+        EvaluationContext template = spelHelper.getContextTemplate();
+        VariableSlots slots = VariableSlots.of(expression);
+        Misses misses = new Misses();
+        List<Lookups> lookups = new ArrayList<Lookups>();
+        for (Map.Entry<String, BatchLoader<?, ?>> loader : loaders.entrySet()) {
+            lookups.add(new Lookups(loader.getKey(), loader.getValue(), misses));
+        }
+
+        int size = rootElements.size();
+        List<T> results = new ArrayList<T>(Collections.<T>nCopies(size, null));
+        boolean[] done = new boolean[size];
+        int remaining = size;
+        for (int round = 1; remaining > 0; round++) {
+            for (int i = 0; i < size; i++) {
+                if (done[i]) {
+                    continue;
+                }
+                EvaluationContext context =
+                    new RootedEvaluationContext(template, rootElements.get(i), slots);
+                for (Lookups lookup : lookups) {
+                    context.setVariable(lookup.name, lookup);
+                }
+                misses.start = misses.count;
+                try {
+                    T result = spelHelper.evalExpression(expression, context, desiredType);
+                    if (!misses.inEvaluation()) {
+                        results.set(i, result);
+                        done[i] = true;
+                        remaining--;
+                    }
+                } catch (RuntimeException e) {
+                    if (!misses.inEvaluation()) {
+                        throw e;
+                    }
+                }
+            }
+            if (remaining > 0) {
+                if (round == maxRounds) {
+                    throw new IllegalStateException("Lookups of expression "
+                            + expressionString + " not resolved in " + maxRounds + " rounds");
+                }
+                loadPending(lookups);
+            }
+        }
+        return results;
+    }
+
+    private static void loadPending(final List<Lookups> lookups) {
+        Map<Lookups, Future<Map<Object, Object>>> futures =
+            new HashMap<Lookups, Future<Map<Object, Object>>>();
+        for (Lookups lookup : lookups) {
+            if (!lookup.pending.isEmpty()) {
+                futures.put(lookup, lookup.loader.load(
+                        Collections.unmodifiableSet(new LinkedHashSet<Object>(lookup.pending))));
+            }
+        }
+        for (Map.Entry<Lookups, Future<Map<Object, Object>>> future : futures.entrySet()) {
+            Lookups lookup = future.getKey();
+            Map<Object, Object> values;
+            try {
+                values = future.getValue().get();
+            } catch (ExecutionException e) {
+                throw loadError(lookup.name, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw loadError(lookup.name, e);
+            }
+            for (Object key : lookup.pending) {
+                lookup.loaded.put(key, values == null ? null : values.get(key));
+            }
+            lookup.pending.clear();
+        }
+    }
+
+    private static SpelEvaluationException loadError(final String name,
+            final Throwable cause) {
+        return new SpelEvaluationException(cause,
+                SpelMessage.EXCEPTION_DURING_FUNCTION_CALL, name, cause.getMessage());
+    }
+
+    /**
+     * The lookups made through a loader for a batch of root elements. This is
+     * the value of the variable of the loader in the expressions.
+     */
+    public static final class Lookups {
+        private final String name;
+        private final BatchLoader<Object, Object> loader;
+        private final Map<Object, Object> loaded = new HashMap<Object, Object>();
+        private final Set<Object> pending = new LinkedHashSet<Object>();
+        private final Misses misses;
+
+        @SuppressWarnings("unchecked")
+        private Lookups(final String name, final BatchLoader<?, ?> loader,
+                final Misses misses) {
+            this.name = name;
+            this.loader = (BatchLoader<Object, Object>) loader;
+            this.misses = misses;
+        }
+
+        /**
+         * Looks up the value for the key `key`.
+         * @param key   The key to look up.
+         * @return  The value for the key if it has been loaded, else null.
+         */
+        public Object load(final Object key) {
+            if (loaded.containsKey(key)) {
+                return loaded.get(key);
+            }
+            // a null key after a miss most likely comes from a missing value
+            if (key != null || !misses.inEvaluation()) {
+                pending.add(key);
+            }
+            misses.count++;
+            return null;
+        }
+    }
+
+    /**
+     * Counts the lookups of the keys which have not been loaded, across the
+     * loaders of a batch.
+     */
+    private static final class Misses {
+        private int count;
+        private int start;
+
+        public boolean inEvaluation() {
+            return count > start;
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+/* Copyright 2010 Abhinav Sarkar <abhinav@abhinavsarkar.net>
+ *
+ * This file is a part of SpelHelper library.
+ *
+ * SpelHelper library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License (GNU LGPL) as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * SpelHelper library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with SpelHelper library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.abhinavsarkar.spelhelper;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the values for a batch of keys asynchronously, for example from a
+ * backing store. Used by {@link BatchEvaluator} to coalesce the lookups made
+ * by SpEL expressions into a single call.
+ *
+ * @param <K>   The type of the keys.
+ * @param <V>   The type of the values.
+ * @author Abhinav Sarkar _abhinav@abhinavsarkar.net_
+ */
+public interface BatchLoader<K, V> {
+
+    /**
+     * Starts loading the values for the keys `keys`.
+     * @param keys  The keys to load the values for.
+     * @return  A future of the map of the keys to their values. The keys
+     * missing from the map have null values.
+     */
+    Future<Map<K, V>> load(Set<K> keys);
+
+}
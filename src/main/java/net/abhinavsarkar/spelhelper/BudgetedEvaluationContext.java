@@ -0,0 +1,378 @@
+/* Copyright 2010 Abhinav Sarkar <abhinav@abhinavsarkar.net>
+ *
+ * This file is a part of SpelHelper library.
+ *
+ * SpelHelper library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License (GNU LGPL) as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * SpelHelper library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with SpelHelper library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.abhinavsarkar.spelhelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.core.convert.TypeDescriptor;
+import org.springframework.expression.AccessException;
+import org.springframework.expression.BeanResolver;
+import org.springframework.expression.ConstructorExecutor;
+import org.springframework.expression.ConstructorResolver;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.EvaluationException;
+import org.springframework.expression.Expression;
+import org.springframework.expression.MethodExecutor;
+import org.springframework.expression.MethodResolver;
+import org.springframework.expression.OperatorOverloader;
+import org.springframework.expression.PropertyAccessor;
+import org.springframework.expression.TypeComparator;
+import org.springframework.expression.TypeConverter;
+import org.springframework.expression.TypeLocator;
+import org.springframework.expression.TypedValue;
+import org.springframework.expression.spel.ExpressionState;
+import org.springframework.expression.spel.SpelNode;
+import org.springframework.expression.spel.ast.Projection;
+import org.springframework.expression.spel.ast.Selection;
+import org.springframework.expression.spel.ast.SpelNodeImpl;
+import org.springframework.expression.spel.standard.SpelExpression;
+
+/**
+ * An evaluation context which meters an evaluation against an
+ * {@link EvaluationBudget}. It wraps the resolvers and accessors of another
+ * context so that every property access, method and constructor call, and
+ * variable lookup counts as a step. The elements visited by projections and
+ * selections are counted by the nodes put in place by
+ * {@link #instrument(Expression)}.
+ *
+ * The wrappers find the budget through the context passed to them, so they
+ * stay correct when SpEL caches them in the nodes of an expression.
+ */
+final class BudgetedEvaluationContext implements EvaluationContext {
+
+    /** The number of steps between two checks of the deadline. */
+    private static final int DEADLINE_CHECK_INTERVAL = 64;
+
+    private final EvaluationContext context;
+    private final long maxSteps;
+    private final int maxCollectionSize;
+    private final long deadline;
+    private long steps;
+    private List<PropertyAccessor> propertyAccessors;
+    private List<MethodResolver> methodResolvers;
+    private List<ConstructorResolver> constructorResolvers;
+
+    public BudgetedEvaluationContext(final EvaluationContext context,
+            final EvaluationBudget budget) {
+        this.context = context;
+        this.maxSteps = budget.getMaxSteps() == 0 ? Long.MAX_VALUE : budget.getMaxSteps();
+        this.maxCollectionSize = budget.getMaxCollectionSize() == 0
+            ? Integer.MAX_VALUE : budget.getMaxCollectionSize();
+        long timeout = budget.getTimeout(TimeUnit.NANOSECONDS);
+        this.deadline = timeout == 0 ? 0 : System.nanoTime() + timeout;
+    }
+
+    /**
+     * Counts a step of the evaluation.
+     * @throws EvaluationBudgetExceededException if the step or the time
+     * budget is exceeded.
+     */
+    public void step() {
+        if (++steps > maxSteps) {
+            throw new EvaluationBudgetExceededException(
+                    "Evaluation exceeded the budget of " + maxSteps + " steps");
+        }
+        if (steps % DEADLINE_CHECK_INTERVAL == 0) {
+            checkDeadline();
+        }
+    }
+
+    /**
+     * Checks the size of a collection produced during the evaluation.
+     * @throws EvaluationBudgetExceededException if the collection size or
+     * the time budget is exceeded.
+     */
+    public void checkCollectionSize(final int size) {
+        if (size > maxCollectionSize) {
+            throw new EvaluationBudgetExceededException("Evaluation produced a collection of "
+                    + size + " items, more than the budget of " + maxCollectionSize);
+        }
+        checkDeadline();
+    }
+
+    private void checkDeadline() {
+        if (deadline != 0 && System.nanoTime() - deadline > 0) {
+            throw new EvaluationBudgetExceededException(
+                    "Evaluation exceeded the time budget");
+        }
+    }
+
+    /**
+     * Checks the size of a collection produced by an extension function or an
+     * implicit method against the budget of the current evaluation, if any.
+     * @param size  The size of the collection.
+     */
+    static void checkCurrentCollectionSize(final int size) {
+        EvaluationContext current = SpelHelper.getCurrentContext();
+        if (current instanceof BudgetedEvaluationContext) {
+            ((BudgetedEvaluationContext) current).checkCollectionSize(size);
+        }
+    }
+
+    /**
+     * Finds the {@link EvaluationBudgetExceededException} which caused the
+     * exception `e`, as SpEL wraps the exceptions thrown by the methods it calls.
+     * @return  The cause if found, else `e` itself.
+     */
+    static RuntimeException unwrap(final RuntimeException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof EvaluationBudgetExceededException) {
+                return (EvaluationBudgetExceededException) cause;
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Replaces the expressions evaluated for each element by the projections
+     * and selections in the parsed expression `expression` with nodes which
+     * count a step for every element. The expression is modified in place, and
+     * an expression already instrumented is left as it is. The nodes count
+     * the steps only in budgeted contexts, so the expression can still be
+     * shared by the unbudgeted evaluations.
+     */
+    static Expression instrument(final Expression expression) {
+        if (expression instanceof SpelExpression) {
+            instrument(((SpelExpression) expression).getAST());
+        }
+        return expression;
+    }
+
+    private static void instrument(final SpelNode node) {
+        for (int i = 0; i < node.getChildCount(); i++) {
+            instrument(node.getChild(i));
+        }
+        if ((node instanceof Projection || node instanceof Selection)
+                && node.getChildCount() > 0) {
+            if (!NodeChildren.isAccessible()) {
+                throw new IllegalStateException("Cannot count the elements of projections "
+                        + "and selections: the field children of " + SpelNodeImpl.class.getName()
+                        + " is not accessible");
+            }
+            SpelNodeImpl[] children = NodeChildren.of(node);
+            if (!(children[0] instanceof CountingNode)) {
+                children[0] = new CountingNode(children[0]);
+            }
+        }
+    }
+
+    private static void step(final EvaluationContext context) {
+        if (context instanceof BudgetedEvaluationContext) {
+            ((BudgetedEvaluationContext) context).step();
+        }
+    }
+
+    @Override
+    public TypedValue getRootObject() {
+        return context.getRootObject();
+    }
+
+    @Override
+    public List<PropertyAccessor> getPropertyAccessors() {
+        if (propertyAccessors == null) {
+            List<PropertyAccessor> accessors = new ArrayList<PropertyAccessor>();
+            for (PropertyAccessor accessor : context.getPropertyAccessors()) {
+                accessors.add(new CountingPropertyAccessor(accessor));
+            }
+            propertyAccessors = accessors;
+        }
+        return propertyAccessors;
+    }
+
+    @Override
+    public List<MethodResolver> getMethodResolvers() {
+        if (methodResolvers == null) {
+            List<MethodResolver> resolvers = new ArrayList<MethodResolver>();
+            for (MethodResolver resolver : context.getMethodResolvers()) {
+                resolvers.add(new CountingMethodResolver(resolver));
+            }
+            methodResolvers = resolvers;
+        }
+        return methodResolvers;
+    }
+
+    @Override
+    public List<ConstructorResolver> getConstructorResolvers() {
+        if (constructorResolvers == null) {
+            List<ConstructorResolver> resolvers = new ArrayList<ConstructorResolver>();
+            for (ConstructorResolver resolver : context.getConstructorResolvers()) {
+                resolvers.add(new CountingConstructorResolver(resolver));
+            }
+            constructorResolvers = resolvers;
+        }
+        return constructorResolvers;
+    }
+
+    @Override
+    public TypeLocator getTypeLocator() {
+        return context.getTypeLocator();
+    }
+
+    @Override
+    public TypeConverter getTypeConverter() {
+        return context.getTypeConverter();
+    }
+
+    @Override
+    public TypeComparator getTypeComparator() {
+        return context.getTypeComparator();
+    }
+
+    @Override
+    public OperatorOverloader getOperatorOverloader() {
+        return context.getOperatorOverloader();
+    }
+
+    @Override
+    public BeanResolver getBeanResolver() {
+        return context.getBeanResolver();
+    }
+
+    @Override
+    public void setVariable(final String name, final Object value) {
+        context.setVariable(name, value);
+    }
+
+    @Override
+    public Object lookupVariable(final String name) {
+        step();
+        return context.lookupVariable(name);
+    }
+
+    private static final class CountingPropertyAccessor implements PropertyAccessor {
+        private final PropertyAccessor accessor;
+
+        public CountingPropertyAccessor(final PropertyAccessor accessor) {
+            this.accessor = accessor;
+        }
+
+        @Override
+        public Class<?>[] getSpecificTargetClasses() {
+            return accessor.getSpecificTargetClasses();
+        }
+
+        @Override
+        public boolean canRead(final EvaluationContext context, final Object target,
+                final String name) throws AccessException {
+            return accessor.canRead(context, target, name);
+        }
+
+        @Override
+        public TypedValue read(final EvaluationContext context, final Object target,
+                final String name) throws AccessException {
+            step(context);
+            return accessor.read(context, target, name);
+        }
+
+        @Override
+        public boolean canWrite(final EvaluationContext context, final Object target,
+                final String name) throws AccessException {
+            return accessor.canWrite(context, target, name);
+        }
+
+        @Override
+        public void write(final EvaluationContext context, final Object target,
+                final String name, final Object newValue) throws AccessException {
+            step(context);
+            accessor.write(context, target, name, newValue);
+        }
+    }
+
+    private static final class CountingMethodResolver implements MethodResolver {
+        private final MethodResolver resolver;
+
+        public CountingMethodResolver(final MethodResolver resolver) {
+            this.resolver = resolver;
+        }
+
+        @Override
+        public MethodExecutor resolve(final EvaluationContext context,
+                final Object targetObject, final String name,
+                final List<TypeDescriptor> argumentTypes) throws AccessException {
+            final MethodExecutor executor =
+                resolver.resolve(context, targetObject, name, argumentTypes);
+            if (executor == null) {
+                return null;
+            }
+            return new MethodExecutor() {
+                @Override
+                public TypedValue execute(final EvaluationContext context,
+                        final Object target, final Object... arguments)
+                        throws AccessException {
+                    step(context);
+                    return executor.execute(context, target, arguments);
+                }
+            };
+        }
+    }
+
+    private static final class CountingConstructorResolver implements ConstructorResolver {
+        private final ConstructorResolver resolver;
+
+        public CountingConstructorResolver(final ConstructorResolver resolver) {
+            this.resolver = resolver;
+        }
+
+        @Override
+        public ConstructorExecutor resolve(final EvaluationContext context,
+                final String typeName, final List<TypeDescriptor> argumentTypes)
+                throws AccessException {
+            final ConstructorExecutor executor =
+                resolver.resolve(context, typeName, argumentTypes);
+            if (executor == null) {
+                return null;
+            }
+            return new ConstructorExecutor() {
+                @Override
+                public TypedValue execute(final EvaluationContext context,
+                        final Object... arguments) throws AccessException {
+                    step(context);
+                    return executor.execute(context, arguments);
+                }
+            };
+        }
+    }
+
+    /**
+     * A node which counts a step every time its delegate is evaluated. The
+     * delegate is not made a child of this node, so it keeps its parent.
+     */
+    private static final class CountingNode extends SpelNodeImpl {
+        private final SpelNodeImpl delegate;
+
+        public CountingNode(final SpelNodeImpl delegate) {
+            super((delegate.getStartPosition() << 16) + delegate.getEndPosition());
+            this.delegate = delegate;
+        }
+
+        @Override
+        public TypedValue getValueInternal(final ExpressionState state)
+                throws EvaluationException {
+            step(state.getEvaluationContext());
+            return delegate.getValueInternal(state);
+        }
+
+        @Override
+        public String toStringAST() {
+            return delegate.toStringAST();
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+/* Copyright 2010 Abhinav Sarkar <abhinav@abhinavsarkar.net>
+ *
+ * This file is a part of SpelHelper library.
+ *
+ * SpelHelper library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License (GNU LGPL) as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * SpelHelper library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with SpelHelper library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.abhinavsarkar.spelhelper;
+
+import java.lang.reflect.Array;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+/**
+ * A batch of rows held as named primitive column arrays, over which a
+ * {@link ColumnarExpression} is evaluated. The property references in the
+ * expression are bound to the columns of the same names.
+ *
+ * Example:
+ *
+ *     ColumnBatch batch = new ColumnBatch(3)
+ *         .addColumn("price", new double[] { 2.5, 4.0, 1.0 })
+ *         .addColumn("quantity", new int[] { 2, 0, 7 });
+ *
+ * The column arrays are not copied. The instances of this class are not
+ * thread safe while columns are being added.
+ *
+ * @author Abhinav Sarkar _abhinav@abhinavsarkar.net_
+ */
+public final class ColumnBatch {
+
+    private final int rowCount;
+    private final Map<String, Object> columns = new LinkedHashMap<String, Object>();
+    private String schema;
+
+    /**
+     * Creates an empty batch of `rowCount` rows.
+     * @param rowCount  The number of rows in the batch.
+     */
+    public ColumnBatch(final int rowCount) {
+        Assert.isTrue(rowCount >= 0, "rowCount should not be negative");
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * Adds an `int` column named `name`.
+     * @param name  The name of the column.
+     * @param values    The values of the column, one for each row.
+     * @return  The current batch. This is for chaining the method calls.
+     */
+    public ColumnBatch addColumn(final String name, final int[] values) {
+        return add(name, values);
+    }
+
+    /**
+     * Adds a `long` column named `name`.
+     * @param name  The name of the column.
+     * @param values    The values of the column, one for each row.
+     * @return  The current batch. This is for chaining the method calls.
+     */
+    public ColumnBatch addColumn(final String name, final long[] values) {
+        return add(name, values);
+    }
+
+    /**
+     * Adds a `double` column named `name`.
+     * @param name  The name of the column.
+     * @param values    The values of the column, one for each row.
+     * @return  The current batch. This is for chaining the method calls.
+     */
+    public ColumnBatch addColumn(final String name, final double[] values) {
+        return add(name, values);
+    }
+
+    /**
+     * Adds a `boolean` column named `name`.
+     * @param name  The name of the column.
+     * @param values    The values of the column, one for each row.
+     * @return  The current batch. This is for chaining the method calls.
+     */
+    public ColumnBatch addColumn(final String name, final boolean[] values) {
+        return add(name, values);
+    }
+
+    /**
+     * Returns the number of rows in this batch.
+     * @return  The number of rows.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    private ColumnBatch add(final String name, final Object values) {
+        Assert.notNull(name, "name is null");
+        Assert.notNull(values, "values is null");
+        Assert.isTrue(Array.getLength(values) == rowCount,
+                "Column " + name + " does not have " + rowCount + " values");
+        columns.put(name, values);
+        schema = null;
+        return this;
+    }
+
+    Object getColumn(final String name) {
+        return columns.get(name);
+    }
+
+    /**
+     * Returns a string identifying the names and the types of the columns.
+     */
+    String getSchema() {
+        String batchSchema = schema;
+        if (batchSchema == null) {
+            StringBuilder builder = new StringBuilder();
+            for (Map.Entry<String, Object> column : columns.entrySet()) {
+                builder.append(column.getKey()).append(':')
+                    .append(column.getValue().getClass().getComponentType()).append(';');
+            }
+            batchSchema = builder.toString();
+            schema = batchSchema;
+        }
+        return batchSchema;
+    }
+
+}
@@ -0,0 +1,975 @@
+/* Copyright 2010 Abhinav Sarkar <abhinav@abhinavsarkar.net>
+ *
+ * This file is a part of SpelHelper library.
+ *
+ * SpelHelper library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License (GNU LGPL) as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * SpelHelper library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with SpelHelper library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.abhinavsarkar.spelhelper;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelEvaluationException;
+import org.springframework.expression.spel.SpelMessage;
+import org.springframework.expression.spel.SpelNode;
+import org.springframework.expression.spel.ast.FunctionReference;
+import org.springframework.expression.spel.ast.Literal;
+import org.springframework.expression.spel.ast.OpAnd;
+import org.springframework.expression.spel.ast.OpDivide;
+import org.springframework.expression.spel.ast.OpEQ;
+import org.springframework.expression.spel.ast.OpGE;
+import org.springframework.expression.spel.ast.OpGT;
+import org.springframework.expression.spel.ast.OpLE;
+import org.springframework.expression.spel.ast.OpLT;
+import org.springframework.expression.spel.ast.OpMinus;
+import org.springframework.expression.spel.ast.OpModulus;
+import org.springframework.expression.spel.ast.OpMultiply;
+import org.springframework.expression.spel.ast.OpNE;
+import org.springframework.expression.spel.ast.OpOr;
+import org.springframework.expression.spel.ast.OpPlus;
+import org.springframework.expression.spel.ast.OperatorNot;
+import org.springframework.expression.spel.ast.PropertyOrFieldReference;
+import org.springframework.expression.spel.ast.Ternary;
+import org.springframework.expression.spel.standard.SpelExpression;
+import org.springframework.util.Assert;
+
+/**
+ * A SpEL expression evaluated over all the rows of a {@link ColumnBatch} at
+ * once, without creating a root object for every row.
+ *
+ * The property references in the expression are bound to the columns of the
+ * batch with the same names. The expression is evaluated over blocks of rows
+ * in tight loops over primitive arrays, one operator at a time. The columnar
+ * mode supports:
+ *
+ * 1. int, long, real and boolean literals
+ * 2. arithmetic operators: `+`, `-`, `*`, `/` and `%`
+ * 3. relational operators: `==`, `!=`, `<`, `<=`, `>` and `>=`
+ * 4. logical operators: `and`, `or` and `!`
+ * 5. the ternary operator
+ * 6. `int`, `long`, `double` and `boolean` columns
+ * 7. registered functions whose parameters and return type are all
+ * `int`, `long`, `double` or `boolean`
+ *
+ * The arithmetic follows SpEL as in {@link NumericExpression}. The right
+ * operands of `and` and `or` and the branches of the ternary operator are
+ * evaluated only for the rows for which SpEL would evaluate them, so
+ * expressions like `quantity == 0 ? 0 : total / quantity` do not fail.
+ * Registered functions are the slow path of the columnar mode: they are
+ * invoked once for every row through reflection, which boxes their arguments
+ * and results.
+ *
+ * Example:
+ *
+ *     ColumnarExpression expression =
+ *         new SpelHelper().compileColumnarExpression("price * quantity > 10");
+ *     int[] selected = expression.select(batch);
+ *
+ * The expression is compiled once for the names and types of the columns of
+ * a batch, and again after functions are registered. An
+ * {@link IllegalArgumentException} is thrown if the expression uses anything
+ * else. The instances of this class are thread safe.
+ *
+ * @see SpelHelper#compileColumnarExpression(String)
+ * @author Abhinav Sarkar _abhinav@abhinavsarkar.net_
+ */
+public final class ColumnarExpression {
+
+    private static final int BLOCK_SIZE = 1024;
+
+    private final SpelHelper spelHelper;
+    private final Expression expression;
+    private volatile Programs compiled;
+
+    ColumnarExpression(final SpelHelper spelHelper, final Expression expression) {
+        this.spelHelper = spelHelper;
+        this.expression = expression;
+        this.compiled = new Programs(spelHelper.generation());
+    }
+
+    /**
+     * Evaluates this expression over all the rows of the batch `batch` and
+     * gives back a `double` result column.
+     * @param batch The batch to evaluate the expression over.
+     * @return  The results of the evaluation of the expression, one for each row.
+     */
+    public double[] evalDoubles(final ColumnBatch batch) {
+        Program program = compile(batch, false);
+        double[] result = new double[batch.getRowCount()];
+        Frame frame = new Frame(batch, program.vectorCount);
+        for (int from = 0; from < result.length; from += BLOCK_SIZE) {
+            int n = frame.block(from, result.length);
+            System.arraycopy(program.root.doubles(frame, frame.block, n), 0, result, from, n);
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates this expression over all the rows of the batch `batch` and
+     * gives back a `long` result column.
+     * @param batch The batch to evaluate the expression over.
+     * @return  The results of the evaluation of the expression, one for each row.
+     */
+    public long[] evalLongs(final ColumnBatch batch) {
+        Program program = compile(batch, false);
+        long[] result = new long[batch.getRowCount()];
+        Frame frame = new Frame(batch, program.vectorCount);
+        for (int from = 0; from < result.length; from += BLOCK_SIZE) {
+            int n = frame.block(from, result.length);
+            System.arraycopy(program.root.longs(frame, frame.block, n), 0, result, from, n);
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates this boolean expression over all the rows of the batch
+     * `batch` and gives back a `boolean` result column.
+     * @param batch The batch to evaluate the expression over.
+     * @return  The results of the evaluation of the expression, one for each row.
+     */
+    public boolean[] evalBooleans(final ColumnBatch batch) {
+        Program program = compile(batch, true);
+        boolean[] result = new boolean[batch.getRowCount()];
+        Frame frame = new Frame(batch, program.vectorCount);
+        for (int from = 0; from < result.length; from += BLOCK_SIZE) {
+            int n = frame.block(from, result.length);
+            System.arraycopy(program.root.booleans(frame, frame.block, n), 0, result, from, n);
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates this boolean expression over all the rows of the batch
+     * `batch` and gives back the selection vector of the rows for which it
+     * is true.
+     * @param batch The batch to evaluate the expression over.
+     * @return  The indices of the selected rows in ascending order.
+     */
+    public int[] select(final ColumnBatch batch) {
+        Program program = compile(batch, true);
+        int rowCount = batch.getRowCount();
+        int[] selected = new int[rowCount];
+        int count = 0;
+        Frame frame = new Frame(batch, program.vectorCount);
+        for (int from = 0; from < rowCount; from += BLOCK_SIZE) {
+            int n = frame.block(from, rowCount);
+            boolean[] values = program.root.booleans(frame, frame.block, n);
+            for (int i = 0; i < n; i++) {
+                if (values[i]) {
+                    selected[count++] = from + i;
+                }
+            }
+        }
+        return count == rowCount ? selected : Arrays.copyOf(selected, count);
+    }
+
+    /**
+     * Returns the SpEL expression string of this expression.
+     * @return  The expression string.
+     */
+    public String getExpressionString() {
+        return expression.getExpressionString();
+    }
+
+    private Program compile(final ColumnBatch batch, final boolean bool) {
+        Assert.notNull(batch, "batch is null");
+        int generation = spelHelper.generation();
+        Programs programs = compiled;
+        if (programs.generation != generation) {
+            programs = new Programs(generation);
+            compiled = programs;
+        }
+        String schema = batch.getSchema();
+        Program program = programs.get(schema);
+        if (program == null) {
+            program = new Program();
+            program.root = expression instanceof SpelExpression
+                ? compile(((SpelExpression) expression).getAST(), batch, program) : null;
+            Assert.notNull(program.root,
+                    "Expression cannot be evaluated over columns: " + getExpressionString());
+            programs.putIfAbsent(schema, program);
+        }
+        if (bool != (program.root.kind == PrimitiveKind.BOOLEAN)) {
+            throw new SpelEvaluationException(SpelMessage.TYPE_CONVERSION_ERROR,
+                    program.root.kind.name().toLowerCase(), bool ? "boolean" : "a number");
+        }
+        return program;
+    }
+
+    private Vector compile(final SpelNode node, final ColumnBatch batch,
+            final Program program) {
+        if (node instanceof Literal) {
+            return literal(((Literal) node).getLiteralValue().getValue(), program);
+        }
+        if (node instanceof PropertyOrFieldReference) {
+            return column(((PropertyOrFieldReference) node).getName(), batch, program);
+        }
+        if (node instanceof FunctionReference) {
+            return function(node, batch, program);
+        }
+        Vector[] operands = new Vector[node.getChildCount()];
+        for (int i = 0; i < operands.length; i++) {
+            operands[i] = compile(node.getChild(i), batch, program);
+            if (operands[i] == null) {
+                return null;
+            }
+        }
+        if (node instanceof OpPlus || node instanceof OpMinus
+                || node instanceof OpMultiply || node instanceof OpDivide
+                || node instanceof OpModulus) {
+            if (operands.length == 1) {
+                return node instanceof OpPlus ? numeric(operands[0])
+                    : node instanceof OpMinus
+                        ? Arithmetic.create(Arithmetic.NEGATE, numeric(operands[0]), null, program)
+                    : null;
+            }
+            int operator = node instanceof OpPlus ? Arithmetic.PLUS
+                : node instanceof OpMinus ? Arithmetic.MINUS
+                : node instanceof OpMultiply ? Arithmetic.MULTIPLY
+                : node instanceof OpDivide ? Arithmetic.DIVIDE : Arithmetic.MODULUS;
+            return Arithmetic.create(operator,
+                    numeric(operands[0]), numeric(operands[1]), program);
+        }
+        if (node instanceof OpEQ || node instanceof OpNE || node instanceof OpLT
+                || node instanceof OpLE || node instanceof OpGT || node instanceof OpGE) {
+            return Comparison.create(node, operands[0], operands[1], program);
+        }
+        if (node instanceof OpAnd || node instanceof OpOr) {
+            return Logical.create(node instanceof OpAnd,
+                    bool(operands[0]), bool(operands[1]), program);
+        }
+        if (node instanceof OperatorNot) {
+            return Logical.not(bool(operands[0]), program);
+        }
+        if (node instanceof Ternary) {
+            return Conditional.create(bool(operands[0]), operands[1], operands[2], program);
+        }
+        return null;
+    }
+
+    private static Vector numeric(final Vector vector) {
+        return vector == null || vector.kind == PrimitiveKind.BOOLEAN ? null : vector;
+    }
+
+    private static Vector bool(final Vector vector) {
+        return vector == null || vector.kind != PrimitiveKind.BOOLEAN ? null : vector;
+    }
+
+    private static Vector literal(final Object value, final Program program) {
+        PrimitiveKind kind = PrimitiveKind.ofLiteral(value);
+        return kind == null ? null : new Constant(kind, value, program);
+    }
+
+    private static Vector column(final String name, final ColumnBatch batch,
+            final Program program) {
+        Object column = batch.getColumn(name);
+        if (column == null) {
+            return null;
+        }
+        return new ColumnRead(PrimitiveKind.of(column.getClass().getComponentType()), name, program);
+    }
+
+    private Vector function(final SpelNode node, final ColumnBatch batch,
+            final Program program) {
+        String ast = node.toStringAST();
+        Method method = spelHelper.lookupFunction(ast.substring(1, ast.indexOf('(')));
+        PrimitiveKind[] parameterKinds = PrimitiveKind.parametersOf(method, node.getChildCount());
+        if (parameterKinds == null) {
+            return null;
+        }
+        Vector[] arguments = new Vector[parameterKinds.length];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = compile(node.getChild(i), batch, program);
+            if (arguments[i] == null || !parameterKinds[i].accepts(arguments[i].kind)) {
+                return null;
+            }
+        }
+        return new FunctionCall(PrimitiveKind.of(method.getReturnType()),
+                method, parameterKinds, arguments, program);
+    }
+
+    /**
+     * The programs compiled per schema, valid as long as the generation of
+     * the SpelHelper does not change.
+     */
+    private static final class Programs extends ConcurrentHashMap<String, Program> {
+        private static final long serialVersionUID = 1L;
+
+        private final int generation;
+
+        public Programs(final int generation) {
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * An expression compiled for the columns of a batch.
+     */
+    private static final class Program {
+        private Vector root;
+        private int vectorCount;
+    }
+
+    /**
+     * The buffers of a single evaluation. Every vector writes the values of a
+     * block of rows to its own buffers, so that the compiled expression can be
+     * shared by the threads.
+     */
+    private static final class Frame {
+        private final ColumnBatch batch;
+        private final Object[] values;
+        private final Object[] converted;
+        private final int[][] rows;
+        private final int[] block = new int[BLOCK_SIZE];
+
+        public Frame(final ColumnBatch batch, final int vectorCount) {
+            this.batch = batch;
+            this.values = new Object[vectorCount];
+            this.converted = new Object[vectorCount];
+            this.rows = new int[vectorCount * 2][];
+        }
+
+        /**
+         * Fills the block of row indices starting at `from` and returns its size.
+         */
+        public int block(final int from, final int rowCount) {
+            int n = Math.min(BLOCK_SIZE, rowCount - from);
+            for (int i = 0; i < n; i++) {
+                block[i] = from + i;
+            }
+            return n;
+        }
+
+        public int[] ints(final int id) {
+            if (values[id] == null) {
+                values[id] = new int[BLOCK_SIZE];
+            }
+            return (int[]) values[id];
+        }
+
+        public long[] longs(final int id, final boolean conversion) {
+            Object[] buffers = conversion ? converted : values;
+            if (buffers[id] == null) {
+                buffers[id] = new long[BLOCK_SIZE];
+            }
+            return (long[]) buffers[id];
+        }
+
+        public double[] doubles(final int id, final boolean conversion) {
+            Object[] buffers = conversion ? converted : values;
+            if (buffers[id] == null) {
+                buffers[id] = new double[BLOCK_SIZE];
+            }
+            return (double[]) buffers[id];
+        }
+
+        public boolean[] booleans(final int id) {
+            if (values[id] == null) {
+                values[id] = new boolean[BLOCK_SIZE];
+            }
+            return (boolean[]) values[id];
+        }
+
+        public int[] rows(final int id, final int index) {
+            if (rows[id * 2 + index] == null) {
+                rows[id * 2 + index] = new int[BLOCK_SIZE];
+            }
+            return rows[id * 2 + index];
+        }
+    }
+
+    /**
+     * A vector of the compiled expression. A vector computes the values of
+     * its own kind for the rows `rows[0]` to `rows[n - 1]`, and gives back the
+     * values of its own kind and of the wider kinds.
+     */
+    private abstract static class Vector {
+        protected final PrimitiveKind kind;
+        protected final int id;
+
+        protected Vector(final PrimitiveKind kind, final Program program) {
+            this.kind = kind;
+            this.id = program.vectorCount++;
+        }
+
+        protected abstract void compute(Frame frame, int[] rows, int n);
+
+        public int[] ints(final Frame frame, final int[] rows, final int n) {
+            compute(frame, rows, n);
+            return frame.ints(id);
+        }
+
+        public long[] longs(final Frame frame, final int[] rows, final int n) {
+            compute(frame, rows, n);
+            if (kind == PrimitiveKind.LONG) {
+                return frame.longs(id, false);
+            }
+            long[] result = frame.longs(id, true);
+            if (kind == PrimitiveKind.INT) {
+                int[] values = frame.ints(id);
+                for (int i = 0; i < n; i++) {
+                    result[i] = values[i];
+                }
+            } else {
+                double[] values = frame.doubles(id, false);
+                for (int i = 0; i < n; i++) {
+                    result[i] = (long) values[i];
+                }
+            }
+            return result;
+        }
+
+        public double[] doubles(final Frame frame, final int[] rows, final int n) {
+            compute(frame, rows, n);
+            if (kind == PrimitiveKind.DOUBLE) {
+                return frame.doubles(id, false);
+            }
+            double[] result = frame.doubles(id, true);
+            if (kind == PrimitiveKind.INT) {
+                int[] values = frame.ints(id);
+                for (int i = 0; i < n; i++) {
+                    result[i] = values[i];
+                }
+            } else {
+                long[] values = frame.longs(id, false);
+                for (int i = 0; i < n; i++) {
+                    result[i] = values[i];
+                }
+            }
+            return result;
+        }
+
+        public boolean[] booleans(final Frame frame, final int[] rows, final int n) {
+            compute(frame, rows, n);
+            return frame.booleans(id);
+        }
+
+        /**
+         * Gives back the values of the kind `valueKind`.
+         */
+        public Object values(final PrimitiveKind valueKind, final Frame frame,
+                final int[] rows, final int n) {
+            switch (valueKind) {
+            case INT:
+                return ints(frame, rows, n);
+            case LONG:
+                return longs(frame, rows, n);
+            case DOUBLE:
+                return doubles(frame, rows, n);
+            default:
+                return booleans(frame, rows, n);
+            }
+        }
+
+        /**
+         * Copies the value at index `from` of the values `source` of the kind
+         * of this vector to the index `to` of the buffer of this vector.
+         */
+        protected void copyValue(final Frame frame, final Object source,
+                final int from, final int to) {
+            switch (kind) {
+            case INT:
+                frame.ints(id)[to] = ((int[]) source)[from];
+                break;
+            case LONG:
+                frame.longs(id, false)[to] = ((long[]) source)[from];
+                break;
+            case DOUBLE:
+                frame.doubles(id, false)[to] = ((double[]) source)[from];
+                break;
+            default:
+                frame.booleans(id)[to] = ((boolean[]) source)[from];
+            }
+        }
+    }
+
+    private static final class Constant extends Vector {
+        private final long longValue;
+        private final double doubleValue;
+        private final boolean booleanValue;
+
+        public Constant(final PrimitiveKind kind, final Object value, final Program program) {
+            super(kind, program);
+            this.longValue = kind == PrimitiveKind.BOOLEAN ? 0 : ((Number) value).longValue();
+            this.doubleValue = kind == PrimitiveKind.BOOLEAN ? 0 : ((Number) value).doubleValue();
+            this.booleanValue = kind == PrimitiveKind.BOOLEAN && ((Boolean) value).booleanValue();
+        }
+
+        @Override
+        protected void compute(final Frame frame, final int[] rows, final int n) {
+            switch (kind) {
+            case INT:
+                Arrays.fill(frame.ints(id), 0, n, (int) longValue);
+                break;
+            case LONG:
+                Arrays.fill(frame.longs(id, false), 0, n, longValue);
+                break;
+            case DOUBLE:
+                Arrays.fill(frame.doubles(id, false), 0, n, doubleValue);
+                break;
+            default:
+                Arrays.fill(frame.booleans(id), 0, n, booleanValue);
+            }
+        }
+    }
+
+    private static final class ColumnRead extends Vector {
+        private final String name;
+
+        public ColumnRead(final PrimitiveKind kind, final String name, final Program program) {
+            super(kind, program);
+            this.name = name;
+        }
+
+        @Override
+        protected void compute(final Frame frame, final int[] rows, final int n) {
+            Object values = frame.batch.getColumn(name);
+            switch (kind) {
+            case INT:
+                int[] ints = frame.ints(id);
+                for (int i = 0; i < n; i++) {
+                    ints[i] = ((int[]) values)[rows[i]];
+                }
+                break;
+            case LONG:
+                long[] longs = frame.longs(id, false);
+                for (int i = 0; i < n; i++) {
+                    longs[i] = ((long[]) values)[rows[i]];
+                }
+                break;
+            case DOUBLE:
+                double[] doubles = frame.doubles(id, false);
+                for (int i = 0; i < n; i++) {
+                    doubles[i] = ((double[]) values)[rows[i]];
+                }
+                break;
+            default:
+                boolean[] booleans = frame.booleans(id);
+                for (int i = 0; i < n; i++) {
+                    booleans[i] = ((boolean[]) values)[rows[i]];
+                }
+            }
+        }
+    }
+
+    private static final class FunctionCall extends Vector {
+        private final Method method;
+        private final PrimitiveKind[] parameterKinds;
+        private final Vector[] arguments;
+
+        public FunctionCall(final PrimitiveKind kind, final Method method, final PrimitiveKind[] parameterKinds,
+                final Vector[] arguments, final Program program) {
+            super(kind, program);
+            this.method = method;
+            this.parameterKinds = parameterKinds;
+            this.arguments = arguments;
+        }
+
+        @Override
+        protected void compute(final Frame frame, final int[] rows, final int n) {
+            Object[] argumentValues = new Object[arguments.length];
+            for (int j = 0; j < arguments.length; j++) {
+                argumentValues[j] = arguments[j].values(parameterKinds[j], frame, rows, n);
+            }
+            Object[] values = new Object[arguments.length];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < values.length; j++) {
+                    values[j] = value(parameterKinds[j], argumentValues[j], i);
+                }
+                Object result = invoke(values);
+                switch (kind) {
+                case INT:
+                    frame.ints(id)[i] = ((Number) result).intValue();
+                    break;
+                case LONG:
+                    frame.longs(id, false)[i] = ((Number) result).longValue();
+                    break;
+                case DOUBLE:
+                    frame.doubles(id, false)[i] = ((Number) result).doubleValue();
+                    break;
+                default:
+                    frame.booleans(id)[i] = ((Boolean) result).booleanValue();
+                }
+            }
+        }
+
+        private static Object value(final PrimitiveKind valueKind, final Object values,
+                final int index) {
+            switch (valueKind) {
+            case INT:
+                return ((int[]) values)[index];
+            case LONG:
+                return ((long[]) values)[index];
+            case DOUBLE:
+                return ((double[]) values)[index];
+            default:
+                return ((boolean[]) values)[index];
+            }
+        }
+
+        private Object invoke(final Object[] values) {
+            try {
+                return method.invoke(null, values);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw invocationError(method, e.getCause());
+            } catch (IllegalAccessException e) {
+                throw invocationError(method, e);
+            }
+        }
+    }
+
+    private static final class Arithmetic extends Vector {
+        private static final int PLUS = 0, MINUS = 1, MULTIPLY = 2, DIVIDE = 3,
+            MODULUS = 4, NEGATE = 5;
+
+        private final int operator;
+        private final Vector left;
+        private final Vector right;
+
+        private Arithmetic(final int operator, final PrimitiveKind kind, final Vector left,
+                final Vector right, final Program program) {
+            super(kind, program);
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        public static Vector create(final int operator, final Vector left,
+                final Vector right, final Program program) {
+            if (left == null || (operator != NEGATE && right == null)) {
+                return null;
+            }
+            PrimitiveKind kind = right == null ? left.kind : left.kind.wider(right.kind);
+            return new Arithmetic(operator, kind, left, right, program);
+        }
+
+        @Override
+        protected void compute(final Frame frame, final int[] rows, final int n) {
+            switch (kind) {
+            case INT:
+                computeInts(frame, rows, n);
+                break;
+            case LONG:
+                computeLongs(frame, rows, n);
+                break;
+            default:
+                computeDoubles(frame, rows, n);
+            }
+        }
+
+        private void computeInts(final Frame frame, final int[] rows, final int n) {
+            int[] result = frame.ints(id);
+            int[] l = left.ints(frame, rows, n);
+            if (operator == NEGATE) {
+                for (int i = 0; i < n; i++) {
+                    result[i] = -l[i];
+                }
+                return;
+            }
+            int[] r = right.ints(frame, rows, n);
+            switch (operator) {
+            case PLUS:
+                for (int i = 0; i < n; i++) {
+                    result[i] = l[i] + r[i];
+                }
+                break;
+            case MINUS:
+                for (int i = 0; i < n; i++) {
+                    result[i] = l[i] - r[i];
+                }
+                break;
+            case MULTIPLY:
+                for (int i = 0; i < n; i++) {
+                    result[i] = l[i] * r[i];
+                }
+                break;
+            case DIVIDE:
+                for (int i = 0; i < n; i++) {
+                    result[i] = l[i] / r[i];
+                }
+                break;
+            default:
+                for (int i = 0; i < n; i++) {
+                    result[i] = l[i] % r[i];
+                }
+            }
+        }
+
+        private void computeLongs(final Frame frame, final int[] rows, final int n) {
+            long[] result = frame.longs(id, false);
+            long[] l = left.longs(frame, rows, n);
+            if (operator == NEGATE) {
+                for (int i = 0; i < n; i++) {
+                    result[i] = -l[i];
+                }
+                return;
+            }
+            long[] r = right.longs(frame, rows, n);
+            switch (operator) {
+            case PLUS:
+                for (int i = 0; i < n; i++) {
+                    result[i] = l[i] + r[i];
+                }
+                break;
+            case MINUS:
+                for (int i = 0; i < n; i++) {
+                    result[i] = l[i] - r[i];
+                }
+                break;
+            case MULTIPLY:
+                for (int i = 0; i < n; i++) {
+                    result[i] = l[i] * r[i];
+                }
+                break;
+            case DIVIDE:
+                for (int i = 0; i < n; i++) {
+                    result[i] = l[i] / r[i];
+                }
+                break;
+            default:
+                for (int i = 0; i < n; i++) {
+                    result[i] = l[i] % r[i];
+                }
+            }
+        }
+
+        private void computeDoubles(final Frame frame, final int[] rows, final int n) {
+            double[] result = frame.doubles(id, false);
+            double[] l = left.doubles(frame, rows, n);
+            if (operator == NEGATE) {
+                for (int i = 0; i < n; i++) {
+                    result[i] = -l[i];
+                }
+                return;
+            }
+            double[] r = right.doubles(frame, rows, n);
+            switch (operator) {
+            case PLUS:
+                for (int i = 0; i < n; i++) {
+                    result[i] = l[i] + r[i];
+                }
+                break;
+            case MINUS:
+                for (int i = 0; i < n; i++) {
+                    result[i] = l[i] - r[i];
+                }
+                break;
+            case MULTIPLY:
+                for (int i = 0; i < n; i++) {
+                    result[i] = l[i] * r[i];
+                }
+                break;
+            case DIVIDE:
+                for (int i = 0; i < n; i++) {
+                    result[i] = l[i] / r[i];
+                }
+                break;
+            default:
+                for (int i = 0; i < n; i++) {
+                    result[i] = l[i] % r[i];
+                }
+            }
+        }
+    }
+
+    private static final class Comparison extends Vector {
+        private static final int EQ = 0, NE = 1, LT = 2, LE = 3, GT = 4, GE = 5;
+
+        private final int operator;
+        private final PrimitiveKind operandKind;
+        private final Vector left;
+        private final Vector right;
+
+        private Comparison(final int operator, final Vector left, final Vector right,
+                final Program program) {
+            super(PrimitiveKind.BOOLEAN, program);
+            this.operator = operator;
+            this.operandKind = left.kind.wider(right.kind);
+            this.left = left;
+            this.right = right;
+        }
+
+        public static Vector create(final SpelNode node, final Vector left,
+                final Vector right, final Program program) {
+            int operator = node instanceof OpEQ ? EQ : node instanceof OpNE ? NE
+                : node instanceof OpLT ? LT : node instanceof OpLE ? LE
+                : node instanceof OpGT ? GT : GE;
+            boolean booleans = left.kind == PrimitiveKind.BOOLEAN && right.kind == PrimitiveKind.BOOLEAN;
+            if (booleans ? operator > NE
+                    : left.kind == PrimitiveKind.BOOLEAN || right.kind == PrimitiveKind.BOOLEAN) {
+                return null;
+            }
+            return new Comparison(operator, left, right, program);
+        }
+
+        @Override
+        protected void compute(final Frame frame, final int[] rows, final int n) {
+            boolean[] result = frame.booleans(id);
+            if (operandKind == PrimitiveKind.BOOLEAN) {
+                boolean[] l = left.booleans(frame, rows, n);
+                boolean[] r = right.booleans(frame, rows, n);
+                for (int i = 0; i < n; i++) {
+                    result[i] = (l[i] == r[i]) == (operator == EQ);
+                }
+            } else if (operandKind == PrimitiveKind.DOUBLE) {
+                double[] l = left.doubles(frame, rows, n);
+                double[] r = right.doubles(frame, rows, n);
+                for (int i = 0; i < n; i++) {
+                    result[i] = matches(l[i] < r[i] ? -1
+                            : (l[i] > r[i] ? 1 : (l[i] == r[i] ? 0 : 2)));
+                }
+            } else {
+                long[] l = left.longs(frame, rows, n);
+                long[] r = right.longs(frame, rows, n);
+                for (int i = 0; i < n; i++) {
+                    result[i] = matches(l[i] < r[i] ? -1 : (l[i] == r[i] ? 0 : 1));
+                }
+            }
+        }
+
+        private boolean matches(final int comparison) {
+            switch (operator) {
+            case EQ:
+                return comparison == 0;
+            case NE:
+                return comparison != 0;
+            case LT:
+                return comparison == -1;
+            case LE:
+                return comparison == -1 || comparison == 0;
+            case GT:
+                return comparison == 1;
+            default:
+                return comparison == 1 || comparison == 0;
+            }
+        }
+    }
+
+    private static final class Logical extends Vector {
+        private final boolean and;
+        private final Vector left;
+        private final Vector right;
+
+        private Logical(final boolean and, final Vector left, final Vector right,
+                final Program program) {
+            super(PrimitiveKind.BOOLEAN, program);
+            this.and = and;
+            this.left = left;
+            this.right = right;
+        }
+
+        public static Vector create(final boolean and, final Vector left,
+                final Vector right, final Program program) {
+            return left == null || right == null ? null
+                : new Logical(and, left, right, program);
+        }
+
+        public static Vector not(final Vector operand, final Program program) {
+            return operand == null ? null : new Logical(false, operand, null, program);
+        }
+
+        /**
+         * Evaluates the right operand only for the rows for which the left
+         * operand does not decide the result.
+         */
+        @Override
+        protected void compute(final Frame frame, final int[] rows, final int n) {
+            boolean[] result = frame.booleans(id);
+            boolean[] l = left.booleans(frame, rows, n);
+            if (right == null) {
+                for (int i = 0; i < n; i++) {
+                    result[i] = !l[i];
+                }
+                return;
+            }
+            int[] remaining = frame.rows(id, 0);
+            int m = 0;
+            for (int i = 0; i < n; i++) {
+                if (l[i] == and) {
+                    remaining[m++] = rows[i];
+                }
+            }
+            boolean[] r = m == 0 ? null : right.booleans(frame, remaining, m);
+            for (int i = 0, j = 0; i < n; i++) {
+                result[i] = l[i] == and ? r[j++] : !and;
+            }
+        }
+    }
+
+    private static final class Conditional extends Vector {
+        private final Vector condition;
+        private final Vector ifTrue;
+        private final Vector ifFalse;
+
+        private Conditional(final PrimitiveKind kind, final Vector condition, final Vector ifTrue,
+                final Vector ifFalse, final Program program) {
+            super(kind, program);
+            this.condition = condition;
+            this.ifTrue = ifTrue;
+            this.ifFalse = ifFalse;
+        }
+
+        public static Vector create(final Vector condition, final Vector ifTrue,
+                final Vector ifFalse, final Program program) {
+            if (condition == null
+                    || (ifTrue.kind == PrimitiveKind.BOOLEAN) != (ifFalse.kind == PrimitiveKind.BOOLEAN)) {
+                return null;
+            }
+            return new Conditional(ifTrue.kind.wider(ifFalse.kind),
+                    condition, ifTrue, ifFalse, program);
+        }
+
+        /**
+         * Evaluates each branch only for the rows for which it is chosen.
+         */
+        @Override
+        protected void compute(final Frame frame, final int[] rows, final int n) {
+            boolean[] c = condition.booleans(frame, rows, n);
+            int[] trueRows = frame.rows(id, 0);
+            int[] falseRows = frame.rows(id, 1);
+            int t = 0;
+            int f = 0;
+            for (int i = 0; i < n; i++) {
+                if (c[i]) {
+                    trueRows[t++] = rows[i];
+                } else {
+                    falseRows[f++] = rows[i];
+                }
+            }
+            Object trueValues = t == 0 ? null : ifTrue.values(kind, frame, trueRows, t);
+            Object falseValues = f == 0 ? null : ifFalse.values(kind, frame, falseRows, f);
+            for (int i = 0, j = 0, k = 0; i < n; i++) {
+                if (c[i]) {
+                    copyValue(frame, trueValues, j++, i);
+                } else {
+                    copyValue(frame, falseValues, k++, i);
+                }
+            }
+        }
+    }
+
+    private static SpelEvaluationException invocationError(final Method method,
+            final Throwable cause) {
+        return new SpelEvaluationException(cause,
+                SpelMessage.EXCEPTION_DURING_FUNCTION_CALL, method.getName(),
+                cause.getMessage());
+    }
+
+}
@@ -0,0 +1,61 @@
+/* Copyright 2010 Abhinav Sarkar <abhinav@abhinavsarkar.net>
+ *
+ * This file is a part of SpelHelper library.
+ *
+ * SpelHelper library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License (GNU LGPL) as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * SpelHelper library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with SpelHelper library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.abhinavsarkar.spelhelper;
+
+/**
+ * A numeric SpEL expression compiled into a function from the root objects
+ * to `double` values.
+ *
+ * The expression is parsed once and is evaluated in a lightweight context
+ * built over a shared template, through the primitive path of
+ * {@link NumericExpression} where possible. The instances of this class are
+ * thread safe. The method {@link CompiledDoubleFunction#applyAsDouble(Object)}
+ * has the same signature as the one in `java.util.function.ToDoubleFunction`,
+ * so on Java 8 a method reference like `function::applyAsDouble` can be passed
+ * to `Stream.mapToDouble`.
+ *
+ * @param <T>   The type of the objects to apply the function to.
+ * @see SpelHelper#compileDoubleFunction(String)
+ * @author Abhinav Sarkar _abhinav@abhinavsarkar.net_
+ */
+public final class CompiledDoubleFunction<T> {
+
+    private final NumericExpression expression;
+
+    CompiledDoubleFunction(final NumericExpression expression) {
+        this.expression = expression;
+    }
+
+    /**
+     * Evaluates the expression in the context of the root element `t`.
+     * @param t The root element to evaluate the expression against.
+     * @return  The result of the evaluation of the expression.
+     */
+    public double applyAsDouble(final T t) {
+        return expression.evalDouble(t);
+    }
+
+    /**
+     * Returns the SpEL expression string of this function.
+     * @return  The expression string.
+     */
+    public String getExpressionString() {
+        return expression.getExpressionString();
+    }
+
+}
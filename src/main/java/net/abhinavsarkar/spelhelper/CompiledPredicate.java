@@ -0,0 +1,65 @@
+/* Copyright 2010 Abhinav Sarkar <abhinav@abhinavsarkar.net>
+ *
+ * This file is a part of SpelHelper library.
+ *
+ * SpelHelper library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License (GNU LGPL) as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * SpelHelper library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with SpelHelper library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.abhinavsarkar.spelhelper;
+
+/**
+ * A boolean SpEL expression compiled into a predicate over the root objects.
+ *
+ * The expression is parsed once and is evaluated in a lightweight context
+ * built over a shared template, through the primitive path of
+ * {@link NumericExpression} where possible. The instances of this class are
+ * thread safe. The method {@link CompiledPredicate#test(Object)} has the same
+ * signature as the one in `java.util.function.Predicate`, so on Java 8 a method
+ * reference like `predicate::test` can be passed to `Stream.filter`.
+ *
+ * Example:
+ *
+ *     CompiledPredicate<Order> bigOrder =
+ *         new SpelHelper().compilePredicate("price * quantity > 1000");
+ *     if (bigOrder.test(order)) { ... }
+ *
+ * @param <T>   The type of the objects to test.
+ * @see SpelHelper#compilePredicate(String)
+ * @author Abhinav Sarkar _abhinav@abhinavsarkar.net_
+ */
+public final class CompiledPredicate<T> {
+
+    private final NumericExpression expression;
+
+    CompiledPredicate(final NumericExpression expression) {
+        this.expression = expression;
+    }
+
+    /**
+     * Evaluates the expression in the context of the root element `t`.
+     * @param t The root element to evaluate the expression against.
+     * @return  The result of the evaluation of the expression.
+     */
+    public boolean test(final T t) {
+        return expression.evalBoolean(t);
+    }
+
+    /**
+     * Returns the SpEL expression string of this predicate.
+     * @return  The expression string.
+     */
+    public String getExpressionString() {
+        return expression.getExpressionString();
+    }
+
+}
@@ -0,0 +1,101 @@
+/* Copyright 2010 Abhinav Sarkar <abhinav@abhinavsarkar.net>
+ *
+ * This file is a part of SpelHelper library.
+ *
+ * SpelHelper library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License (GNU LGPL) as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * SpelHelper library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with SpelHelper library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.abhinavsarkar.spelhelper;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.util.Assert;
+
+/**
+ * Limits on the work done by a single evaluation of SpEL expressions through
+ * {@link SpelHelper#evalExpression(String, Object, Class, EvaluationBudget)}
+ * and {@link SpelHelper#evalExpressions(String[], Object, Class, EvaluationBudget)}.
+ *
+ * A budget limits:
+ *
+ * 1. The number of evaluation steps. A step is a property read or write, a
+ *    method, function or constructor call, a variable lookup, or an element
+ *    visited by a projection or a selection.
+ * 2. The size of the collections produced by the extension functions and the
+ *    implicit methods, like `#list` and `sorted`.
+ * 3. The wall-clock time taken by the evaluation, checked every few steps.
+ *
+ * An evaluation which exceeds its budget fails with an
+ * {@link EvaluationBudgetExceededException}. A limit of 0 means no limit.
+ *
+ * Example:
+ *
+ *     EvaluationBudget budget = new EvaluationBudget(10000, 1000, 50, TimeUnit.MILLISECONDS);
+ *     Boolean result = spelHelper.evalExpression(rule, event, Boolean.class, budget);
+ *
+ * The instances of this class are immutable and can be shared.
+ *
+ * @author Abhinav Sarkar _abhinav@abhinavsarkar.net_
+ */
+public final class EvaluationBudget {
+
+    private final int maxSteps;
+    private final int maxCollectionSize;
+    private final long timeoutNanos;
+
+    /**
+     * Creates a budget.
+     * @param maxSteps  The maximum number of evaluation steps, 0 for no limit.
+     * @param maxCollectionSize The maximum size of the collections produced
+     * by the extension functions and the implicit methods, 0 for no limit.
+     * @param timeout   The maximum time taken by the evaluation, 0 for no limit.
+     * @param unit  The unit of `timeout`.
+     */
+    public EvaluationBudget(final int maxSteps, final int maxCollectionSize,
+            final long timeout, final TimeUnit unit) {
+        Assert.isTrue(maxSteps >= 0, "maxSteps should not be negative");
+        Assert.isTrue(maxCollectionSize >= 0, "maxCollectionSize should not be negative");
+        Assert.isTrue(timeout >= 0, "timeout should not be negative");
+        Assert.notNull(unit, "unit is null");
+        this.maxSteps = maxSteps;
+        this.maxCollectionSize = maxCollectionSize;
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Returns the maximum number of evaluation steps.
+     * @return  The maximum number of steps, 0 if there is no limit.
+     */
+    public int getMaxSteps() {
+        return maxSteps;
+    }
+
+    /**
+     * Returns the maximum size of the collections produced by the extension
+     * functions and the implicit methods.
+     * @return  The maximum collection size, 0 if there is no limit.
+     */
+    public int getMaxCollectionSize() {
+        return maxCollectionSize;
+    }
+
+    /**
+     * Returns the maximum time taken by an evaluation.
+     * @param unit  The unit to return the time in.
+     * @return  The maximum time, 0 if there is no limit.
+     */
+    public long getTimeout(final TimeUnit unit) {
+        return unit.convert(timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+}
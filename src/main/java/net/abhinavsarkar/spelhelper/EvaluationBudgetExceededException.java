@@ -0,0 +1,39 @@
+/* Copyright 2010 Abhinav Sarkar <abhinav@abhinavsarkar.net>
+ *
+ * This file is a part of SpelHelper library.
+ *
+ * SpelHelper library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License (GNU LGPL) as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * SpelHelper library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with SpelHelper library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.abhinavsarkar.spelhelper;
+
+import org.springframework.expression.EvaluationException;
+
+/**
+ * Thrown when an evaluation exceeds its {@link EvaluationBudget}.
+ *
+ * @author Abhinav Sarkar _abhinav@abhinavsarkar.net_
+ */
+public class EvaluationBudgetExceededException extends EvaluationException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates an exception with the message `message`.
+     * @param message   The message telling which budget was exceeded.
+     */
+    public EvaluationBudgetExceededException(final String message) {
+        super(message);
+    }
+
+}
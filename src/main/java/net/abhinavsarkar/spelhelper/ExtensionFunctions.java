@@ -20,6 +20,7 @@ package net.abhinavsarkar.spelhelper;
 import static java.util.Collections.unmodifiableList;
 import static java.util.Collections.unmodifiableMap;
 import static java.util.Collections.unmodifiableSet;
+import static net.abhinavsarkar.spelhelper.BudgetedEvaluationContext.checkCurrentCollectionSize;
 
 import java.util.Arrays;
 import java.util.HashMap;
@@ -52,7 +53,9 @@ public final class ExtensionFunctions {
      * @param args  Arguments to create list of.
      * @return  An unmodifiable list of the arguments provided.
      */
+    @Deterministic
     public static <T> List<T> list(final T... args) {
+        checkCurrentCollectionSize(args.length);
         return unmodifiableList(Arrays.asList(args));
     }
 
@@ -64,6 +67,7 @@ public final class ExtensionFunctions {
      * @param args  Arguments to create set of.
      * @return  An unmodifiable set of the arguments provided.
      */
+    @Deterministic
     public static <T> Set<T> set(final T... args) {
         return unmodifiableSet(new HashSet<T>(list(args)));
     }
@@ -82,10 +86,12 @@ public final class ExtensionFunctions {
      * @throws  IllegalArgumentException if the number of keys and the number of
      * values is not equal.
      */
+    @Deterministic
     public static <K,V> Map<K,V> map(final List<? extends K> keys,
             final List<? extends V> values) {
         Assert.isTrue(keys.size() == values.size(),
                 "There should be equal number of keys and values");
+        checkCurrentCollectionSize(keys.size());
         Map<K,V> map = new HashMap<K,V>();
         int length = keys.size();
         for (int i = 0; i < length; i++) {
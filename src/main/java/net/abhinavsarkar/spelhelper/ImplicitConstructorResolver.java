@@ -30,6 +30,11 @@ import org.springframework.expression.spel.support.ReflectiveConstructorResolver
 final class ImplicitConstructorResolver implements ConstructorResolver {
 
     private final ReflectiveConstructorResolver delegate = new ReflectiveConstructorResolver();
+    private final SpelHelper spelHelper;
+
+    public ImplicitConstructorResolver(final SpelHelper spelHelper) {
+        this.spelHelper = spelHelper;
+    }
 
     @Override
     public ConstructorExecutor resolve(
@@ -39,8 +44,8 @@ final class ImplicitConstructorResolver implements ConstructorResolver {
         try {
             return delegate.resolve(context, typeName, argumentTypes);
         } catch (AccessException ex) {
-            Object variable = ((SpelHelper) context.lookupVariable(SpelHelper.CONTEXT_LOOKUP_KEY))
-                .lookupImplicitConstructor(typeName + argumentTypes.toString());
+            Object variable = spelHelper.lookupImplicitConstructor(
+                    typeName + argumentTypes.toString());
             if (variable instanceof Constructor<?>) {
                 Constructor<?> constructor = (Constructor<?>) variable;
                 return delegate.resolve(context, constructor.getDeclaringClass().getName(), argumentTypes);
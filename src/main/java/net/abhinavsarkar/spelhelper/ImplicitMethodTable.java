@@ -0,0 +1,521 @@
+/* Copyright 2010 Abhinav Sarkar <abhinav@abhinavsarkar.net>
+ *
+ * This file is a part of SpelHelper library.
+ *
+ * SpelHelper library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License (GNU LGPL) as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * SpelHelper library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with SpelHelper library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.abhinavsarkar.spelhelper;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.core.convert.TypeDescriptor;
+import org.springframework.expression.AccessException;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.MethodExecutor;
+import org.springframework.expression.MethodResolver;
+import org.springframework.expression.TypeConverter;
+import org.springframework.expression.TypedValue;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Dispatch table for the implicit methods registered with a {@link SpelHelper}.
+ *
+ * The methods are indexed by the receiver class (the type of their first
+ * parameter) and their name, and all the overloads of a name are kept. When
+ * an implicit method is invoked, the most specific overload applicable to the
+ * receiver and argument types is chosen and an executor with a precomputed
+ * argument conversion plan is created for it. The chosen executor is cached
+ * per argument type signature so the selection is done only once.
+ *
+ * A table may have a parent table, whose methods it sees along with its own.
+ * The methods registered in a table take precedence over the ones of its
+ * parent: they override the parent's methods with the same parameter types,
+ * and are chosen over the parent's methods which match equally well. The
+ * names which have no methods registered in a table are resolved by its
+ * parent, so that the tables share the executors cached for them.
+ */
+final class ImplicitMethodTable {
+
+    private enum MatchKind { EXACT, CLOSE, VARARGS, CONVERSION }
+
+    private static final MethodExecutor NULL_ME = new MethodExecutor() {
+        @Override
+        public TypedValue execute(final EvaluationContext context, final Object target,
+                final Object... arguments) throws AccessException {
+            throw new UnsupportedOperationException("This method should never be called");
+        }
+    };
+
+    private final ImplicitMethodTable parent;
+    private final Map<Class<?>, Map<String, List<Method>>> methods =
+        new ConcurrentHashMap<Class<?>, Map<String, List<Method>>>();
+    private final Set<String> names =
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final ConcurrentHashMap<Signature, MethodExecutor> cache =
+        new ConcurrentHashMap<Signature, MethodExecutor>();
+    private final ConcurrentHashMap<Signature, MethodExecutor> propertyCache =
+        new ConcurrentHashMap<Signature, MethodExecutor>();
+    private final AtomicInteger modCount = new AtomicInteger();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong propertyCacheHits = new AtomicLong();
+    private final AtomicLong propertyCacheMisses = new AtomicLong();
+    private volatile int cacheGeneration;
+
+    public ImplicitMethodTable() {
+        this(null);
+    }
+
+    public ImplicitMethodTable(final ImplicitMethodTable parent) {
+        this.parent = parent;
+    }
+
+    public boolean isEmpty() {
+        return methods.isEmpty();
+    }
+
+    public void register(final Method method) {
+        Class<?> receiverType = method.getParameterTypes()[0];
+        Map<String, List<Method>> byName;
+        synchronized (methods) {
+            byName = methods.get(receiverType);
+            if (byName == null) {
+                byName = new ConcurrentHashMap<String, List<Method>>();
+                methods.put(receiverType, byName);
+            }
+        }
+        synchronized (byName) {
+            List<Method> overloads = byName.get(method.getName());
+            if (overloads == null) {
+                overloads = new CopyOnWriteArrayList<Method>();
+                byName.put(method.getName(), overloads);
+            }
+            overloads.remove(method);
+            overloads.add(method);
+        }
+        names.add(method.getName());
+        modCount.incrementAndGet();
+        cache.clear();
+        propertyCache.clear();
+    }
+
+    /**
+     * Returns a number which changes whenever a method is registered in this
+     * table or in any of its ancestors.
+     */
+    private int generation() {
+        int generation = modCount.get();
+        return parent == null ? generation : generation + parent.generation();
+    }
+
+    /**
+     * Returns the overloads of the method `name` for the class `receiverType`.
+     * The overloads registered in this table come first, followed by the ones
+     * inherited from the parent table which they do not override, that is,
+     * which do not have the same parameter types.
+     */
+    public List<Method> lookup(final Class<?> receiverType, final String name) {
+        Map<String, List<Method>> byName = methods.get(receiverType);
+        List<Method> overloads = byName == null ? null : byName.get(name);
+        List<Method> inherited = parent == null
+            ? Collections.<Method>emptyList()
+            : parent.lookup(receiverType, name);
+        if (overloads == null || overloads.isEmpty()) {
+            return inherited;
+        }
+        if (inherited.isEmpty()) {
+            return Collections.unmodifiableList(overloads);
+        }
+        List<Method> merged = new ArrayList<Method>(overloads);
+        for (Method method : inherited) {
+            if (!overrides(overloads, method)) {
+                merged.add(method);
+            }
+        }
+        return Collections.unmodifiableList(merged);
+    }
+
+    private static boolean overrides(final List<Method> overloads, final Method method) {
+        for (Method overload : overloads) {
+            if (Arrays.equals(overload.getParameterTypes(), method.getParameterTypes())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Method lookup(final String receiverTypeName, final String name) {
+        for (Map.Entry<Class<?>, Map<String, List<Method>>> entry : methods.entrySet()) {
+            if (entry.getKey().getName().equals(receiverTypeName)) {
+                List<Method> overloads = entry.getValue().get(name);
+                if (overloads != null && !overloads.isEmpty()) {
+                    return overloads.get(0);
+                }
+            }
+        }
+        return parent == null ? null : parent.lookup(receiverTypeName, name);
+    }
+
+    public List<Method> lookupAll(final String name) {
+        List<Method> found = parent == null
+            ? new ArrayList<Method>()
+            : parent.lookupAll(name);
+        for (Map<String, List<Method>> byName : methods.values()) {
+            List<Method> overloads = byName.get(name);
+            if (overloads != null) {
+                found.addAll(overloads);
+            }
+        }
+        return found;
+    }
+
+    public MethodExecutor resolve(final EvaluationContext context,
+            final Class<?> receiverType, final String name,
+            final List<TypeDescriptor> argumentTypes) {
+        if (parent != null && !names.contains(name)) {
+            return parent.resolve(context, receiverType, name, argumentTypes);
+        }
+        checkGeneration();
+        Signature signature = new Signature(receiverType, name, argumentTypes);
+        MethodExecutor executor = cache.get(signature);
+        if (executor != null) {
+            cacheHits.incrementAndGet();
+        } else {
+            cacheMisses.incrementAndGet();
+            executor = select(context.getTypeConverter(),
+                    receiverType, name, signature.argumentTypes);
+            cache.putIfAbsent(signature, executor == null ? NULL_ME : executor);
+        }
+        return executor == NULL_ME ? null : executor;
+    }
+
+    /**
+     * Resolves the property `name` of the object `target` to a no argument
+     * method, either an implicit method or a method of the object, through
+     * the method resolvers of the context `context`. The executor is cached
+     * per receiver class. The names which have no methods registered in this
+     * table are resolved by the parent, as the resolvers find the same methods
+     * for them.
+     * @return  The executor of the method if found, else null.
+     */
+    public MethodExecutor resolveProperty(final EvaluationContext context,
+            final Object target, final String name) throws AccessException {
+        if (parent != null && !names.contains(name)) {
+            return parent.resolveProperty(context, target, name);
+        }
+        checkGeneration();
+        Signature signature = new Signature(target.getClass(), name,
+                Collections.<TypeDescriptor>emptyList());
+        MethodExecutor executor = propertyCache.get(signature);
+        if (executor != null) {
+            propertyCacheHits.incrementAndGet();
+        } else {
+            propertyCacheMisses.incrementAndGet();
+            for (MethodResolver resolver : context.getMethodResolvers()) {
+                executor = resolver.resolve(context, target, name,
+                        Collections.<TypeDescriptor>emptyList());
+                if (executor != null) {
+                    break;
+                }
+            }
+            propertyCache.putIfAbsent(signature, executor == null ? NULL_ME : executor);
+        }
+        return executor == NULL_ME ? null : executor;
+    }
+
+    /**
+     * Clears the caches if a method has been registered in this table or in
+     * any of its ancestors since they were filled.
+     */
+    private void checkGeneration() {
+        int generation = generation();
+        if (generation != cacheGeneration) {
+            cache.clear();
+            propertyCache.clear();
+            cacheGeneration = generation;
+        }
+    }
+
+    /**
+     * Returns the number of resolutions served from the executor caches of
+     * this table and its ancestors.
+     */
+    public long getCacheHits() {
+        long hits = cacheHits.get();
+        return parent == null ? hits : hits + parent.getCacheHits();
+    }
+
+    /**
+     * Returns the number of resolutions which had to select an executor, in
+     * this table and its ancestors.
+     */
+    public long getCacheMisses() {
+        long misses = cacheMisses.get();
+        return parent == null ? misses : misses + parent.getCacheMisses();
+    }
+
+    /**
+     * Returns the number of property resolutions served from the property
+     * caches of this table and its ancestors.
+     */
+    public long getPropertyCacheHits() {
+        long hits = propertyCacheHits.get();
+        return parent == null ? hits : hits + parent.getPropertyCacheHits();
+    }
+
+    /**
+     * Returns the number of property resolutions which had to look for a
+     * method, in this table and its ancestors.
+     */
+    public long getPropertyCacheMisses() {
+        long misses = propertyCacheMisses.get();
+        return parent == null ? misses : misses + parent.getPropertyCacheMisses();
+    }
+
+    private ImplicitMethodExecutor select(final TypeConverter converter,
+            final Class<?> receiverType, final String name,
+            final Class<?>[] argumentTypes) {
+        ImplicitMethodExecutor best = null;
+        for (Class<?> clazz : InheritenceUtil.getInheritance(receiverType)) {
+            for (Method method : lookup(clazz, name)) {
+                if (!method.getParameterTypes()[0].isAssignableFrom(receiverType)) {
+                    continue;
+                }
+                ImplicitMethodExecutor candidate =
+                    ImplicitMethodExecutor.plan(converter, method, argumentTypes);
+                if (candidate == null) {
+                    continue;
+                }
+                if (best == null
+                        || candidate.kind.compareTo(best.kind) < 0
+                        || (candidate.kind == best.kind
+                            && isMoreSpecific(candidate.method, best.method)
+                            && !isMoreSpecific(best.method, candidate.method))
+                        || (candidate.kind == best.kind
+                            && !isMoreSpecific(best.method, candidate.method)
+                            && isOwn(candidate.method) && !isOwn(best.method))) {
+                    best = candidate;
+                }
+            }
+        }
+        return best;
+    }
+
+    private boolean isOwn(final Method method) {
+        Map<String, List<Method>> byName = methods.get(method.getParameterTypes()[0]);
+        List<Method> overloads = byName == null ? null : byName.get(method.getName());
+        return overloads != null && overloads.contains(method);
+    }
+
+    private static boolean isMoreSpecific(final Method method, final Method other) {
+        Class<?>[] types = method.getParameterTypes();
+        Class<?>[] otherTypes = other.getParameterTypes();
+        if (types.length != otherTypes.length) {
+            return false;
+        }
+        for (int i = 0; i < types.length; i++) {
+            if (!ClassUtils.isAssignable(otherTypes[i], types[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Signature {
+        private final Class<?> receiverType;
+        private final String name;
+        private final Class<?>[] argumentTypes;
+        private final int hashCode;
+
+        public Signature(final Class<?> receiverType, final String name,
+                final List<TypeDescriptor> argumentTypes) {
+            this.receiverType = receiverType;
+            this.name = name;
+            this.argumentTypes = new Class<?>[argumentTypes.size()];
+            for (int i = 0; i < this.argumentTypes.length; i++) {
+                TypeDescriptor descriptor = argumentTypes.get(i);
+                this.argumentTypes[i] = descriptor == null ? null : descriptor.getType();
+            }
+            this.hashCode = 31 * (31 * receiverType.hashCode() + name.hashCode())
+                + Arrays.hashCode(this.argumentTypes);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Signature)) {
+                return false;
+            }
+            Signature other = (Signature) o;
+            return receiverType == other.receiverType && name.equals(other.name)
+                && Arrays.equals(argumentTypes, other.argumentTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * Executes an implicit method with the target as the first argument.
+     * The conversions required for the arguments are worked out when the
+     * executor is planned, so that only the arguments which actually need
+     * a conversion are converted on invocation.
+     */
+    private static final class ImplicitMethodExecutor implements MethodExecutor {
+        private final Method method;
+        private final MatchKind kind;
+        private final TypeDescriptor[] conversions;
+        private final Class<?> varargsType;
+        private final TypeDescriptor varargsConversion;
+        private final TypeDescriptor returnType;
+
+        private ImplicitMethodExecutor(final Method method, final MatchKind kind,
+                final TypeDescriptor[] conversions, final Class<?> varargsType,
+                final TypeDescriptor varargsConversion) {
+            this.method = method;
+            this.kind = kind;
+            this.conversions = conversions;
+            this.varargsType = varargsType;
+            this.varargsConversion = varargsConversion;
+            this.returnType = new TypeDescriptor(new MethodParameter(method, -1));
+            if (!Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                method.setAccessible(true);
+            }
+        }
+
+        public static ImplicitMethodExecutor plan(final TypeConverter converter,
+                final Method method, final Class<?>[] argumentTypes) {
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            int parameterCount = parameterTypes.length;
+            int argumentCount = argumentTypes.length;
+            boolean packVarargs = false;
+            if (method.isVarArgs() && parameterCount > 1) {
+                packVarargs = argumentCount != parameterCount - 1
+                    || argumentTypes[argumentCount - 1] != null
+                        && !parameterTypes[parameterCount - 1]
+                            .isAssignableFrom(argumentTypes[argumentCount - 1]);
+                if (packVarargs && argumentCount < parameterCount - 2) {
+                    return null;
+                }
+            } else if (argumentCount != parameterCount - 1) {
+                return null;
+            }
+
+            MatchKind kind = packVarargs ? MatchKind.VARARGS : MatchKind.EXACT;
+            int fixedCount = packVarargs ? parameterCount - 1 : parameterCount;
+            TypeDescriptor[] conversions = new TypeDescriptor[fixedCount];
+            for (int i = 1; i < fixedCount; i++) {
+                MatchKind argumentKind = match(converter, argumentTypes[i - 1],
+                        parameterTypes[i]);
+                if (argumentKind == null) {
+                    return null;
+                }
+                if (argumentKind == MatchKind.CONVERSION) {
+                    conversions[i] = new TypeDescriptor(new MethodParameter(method, i));
+                }
+                kind = worse(kind, argumentKind);
+            }
+
+            Class<?> varargsType = null;
+            TypeDescriptor varargsConversion = null;
+            if (packVarargs) {
+                varargsType = parameterTypes[parameterCount - 1].getComponentType();
+                for (int i = fixedCount - 1; i < argumentCount; i++) {
+                    MatchKind argumentKind = match(converter, argumentTypes[i], varargsType);
+                    if (argumentKind == null) {
+                        return null;
+                    }
+                    if (argumentKind == MatchKind.CONVERSION) {
+                        varargsConversion = TypeDescriptor.valueOf(varargsType);
+                    }
+                    kind = worse(kind, argumentKind);
+                }
+            }
+            return new ImplicitMethodExecutor(
+                    method, kind, conversions, varargsType, varargsConversion);
+        }
+
+        private static MatchKind match(final TypeConverter converter,
+                final Class<?> argumentType, final Class<?> parameterType) {
+            if (argumentType == null) {
+                return parameterType.isPrimitive() ? null : MatchKind.CLOSE;
+            }
+            if (ClassUtils.resolvePrimitiveIfNecessary(parameterType) == argumentType) {
+                return MatchKind.EXACT;
+            }
+            if (ClassUtils.isAssignable(parameterType, argumentType)) {
+                return MatchKind.CLOSE;
+            }
+            if (converter.canConvert(TypeDescriptor.valueOf(argumentType),
+                    TypeDescriptor.valueOf(parameterType))) {
+                return MatchKind.CONVERSION;
+            }
+            return null;
+        }
+
+        private static MatchKind worse(final MatchKind kind, final MatchKind other) {
+            return kind.compareTo(other) >= 0 ? kind : other;
+        }
+
+        @Override
+        public TypedValue execute(final EvaluationContext context, final Object target,
+                final Object... arguments) throws AccessException {
+            TypeConverter converter = context.getTypeConverter();
+            int fixedCount = conversions.length;
+            Object[] invocationArguments =
+                new Object[varargsType == null ? fixedCount : fixedCount + 1];
+            invocationArguments[0] = target;
+            for (int i = 1; i < fixedCount; i++) {
+                invocationArguments[i] = convert(converter, arguments[i - 1], conversions[i]);
+            }
+            if (varargsType != null) {
+                Object varargs = Array.newInstance(
+                        varargsType, arguments.length - fixedCount + 1);
+                for (int i = fixedCount - 1; i < arguments.length; i++) {
+                    Array.set(varargs, i - fixedCount + 1,
+                            convert(converter, arguments[i], varargsConversion));
+                }
+                invocationArguments[fixedCount] = varargs;
+            }
+            try {
+                return new TypedValue(method.invoke(null, invocationArguments), returnType);
+            } catch (Exception e) {
+                throw new AccessException("Problem invoking method: " + method, e);
+            }
+        }
+
+        private static Object convert(final TypeConverter converter,
+                final Object value, final TypeDescriptor conversion) {
+            if (conversion == null) {
+                return value;
+            }
+            return converter.convertValue(value, TypeDescriptor.forObject(value), conversion);
+        }
+    }
+
+}
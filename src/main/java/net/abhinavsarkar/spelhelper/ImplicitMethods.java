@@ -19,16 +19,34 @@ package net.abhinavsarkar.spelhelper;
 
 import static java.util.Collections.unmodifiableList;
 import static java.util.Collections.unmodifiableSet;
+import static net.abhinavsarkar.spelhelper.BudgetedEvaluationContext.checkCurrentCollectionSize;
 
+import java.util.AbstractList;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.RandomAccess;
 import java.util.Set;
 
 /**
  * Provides some implicit methods which can be invoked on the instances of
  * class of the first parameter of the method inside a SpEL expression.
+ *
+ * The results of `distinct`, `sorted` and `reversed` are computed lazily, so
+ * that a chain of these methods runs as a single fused operation. For example,
+ * `list.sorted.take(k)` selects the `k` smallest items with a bounded heap
+ * instead of sorting the whole list, `list.distinct.sorted` sorts a single copy
+ * of the list and drops the duplicates among the neighbouring items, and
+ * `list.reversed.take(k)` copies only the last `k` items. The fused operations
+ * give the same items as the unfused ones, and in the same order, except for
+ * the order of the distinct items which compare as equal.
  * @author Abhinav Sarkar _abhinav@abhinavsarkar.net_
  */
 public final class ImplicitMethods {
@@ -49,8 +67,10 @@ public final class ImplicitMethods {
      * @param list  The list to call this method upon.
      * @return  An unmodifiable {@link Set} containing the distinct items of the list.
      */
+    @Deterministic
     public static <T> Set<T> distinct(final List<? extends T> list) {
-        return unmodifiableSet(new HashSet<T>(list));
+        checkCurrentCollectionSize(list.size());
+        return new DistinctView<T>(list.toArray());
     }
 
     /**
@@ -68,11 +88,41 @@ public final class ImplicitMethods {
      * of the list.
      * @see Collections#sort(List)
      */
+    @Deterministic
     public static <T extends Comparable<? super T>> List<T> sorted(
             final List<? extends T> list) {
-        List<T> temp = new ArrayList<T>(list);
-        Collections.sort(temp);
-        return unmodifiableList(temp);
+        checkCurrentCollectionSize(list.size());
+        return new SortedView<T>(list.toArray());
+    }
+
+    /**
+     * Provides implicit method `sorted` on the {@link Set} class.
+     *
+     * Example: `"#set('c','b','a').sorted" //should return List('a','b','c')`
+     *
+     * When called on the result of `distinct`, the items are sorted and
+     * deduplicated in a single pass. The items which compare as equal but are
+     * not equal are all kept.
+     * @param <T>   Type of the set's elements.
+     * @param set   The set to call this method upon.
+     * @return      An unmodifiable {@link List} containing the sorted items
+     * of the set.
+     * @see Collections#sort(List)
+     */
+    @SuppressWarnings("unchecked")
+    @Deterministic
+    public static <T extends Comparable<? super T>> List<T> sorted(
+            final Set<? extends T> set) {
+        // the size of a distinct view is checked by distinct, and reading it
+        // here would build the hash set of the items
+        if (set instanceof DistinctView) {
+            List<T> sortedItems = ((DistinctView<T>) set).sortedItems();
+            if (sortedItems != null) {
+                return sortedItems;
+            }
+        }
+        checkCurrentCollectionSize(set.size());
+        return new SortedView<T>(set.toArray());
     }
 
     /**
@@ -90,10 +140,10 @@ public final class ImplicitMethods {
      * list in reverse order.
      * @see Collections#reverse(List)
      */
+    @Deterministic
     public static <T> List<T> reversed(final List<? extends T> list) {
-        List<T> temp = new ArrayList<T>(list);
-        Collections.reverse(temp);
-        return unmodifiableList(temp);
+        checkCurrentCollectionSize(list.size());
+        return new ReversedView<T>(list.toArray());
     }
 
     /**
@@ -107,7 +157,15 @@ public final class ImplicitMethods {
      * @return      An unmodifiable {@link List} containing the first `n` items
      * of the list.
      */
+    @Deterministic
     public static <T> List<T> take(final List<T> list, final int n) {
+        checkCurrentCollectionSize(n);
+        if (list instanceof SortedView) {
+            SortedView<T> sorted = (SortedView<T>) list;
+            if (!sorted.isMaterialized() && n >= 0 && n <= sorted.size() / 2) {
+                return sorted.smallest(n);
+            }
+        }
         return unmodifiableList(list.subList(0, n));
     }
 
@@ -122,8 +180,204 @@ public final class ImplicitMethods {
      * @return      An unmodifiable {@link List} containing the items after the
      * first `n` items of the list.
      */
+    @Deterministic
     public static <T> List<T> drop(final List<T> list, final int n) {
+        checkCurrentCollectionSize(list.size() - n);
         return unmodifiableList(list.subList(n, list.size()));
     }
 
+    /**
+     * An unmodifiable list of the items of a snapshot array in their natural
+     * order. The snapshot is sorted only when the list is first read, so the
+     * smallest items can be selected without sorting all of them. The
+     * neighbouring items are compared when the view is created, so that the
+     * nulls and the items which cannot be compared fail the evaluation which
+     * sorts them, as {@link Collections#sort(List)} does, and not the first
+     * read of the list. A snapshot found already in order is not sorted again.
+     */
+    private static final class SortedView<T> extends AbstractList<T>
+            implements RandomAccess {
+
+        private final Object[] elements;
+        private volatile Object[] sorted;
+
+        @SuppressWarnings("unchecked")
+        public SortedView(final Object[] elements) {
+            this.elements = elements;
+            boolean ordered = true;
+            for (int i = 1; i < elements.length; i++) {
+                if (((Comparable<Object>) elements[i]).compareTo(elements[i - 1]) < 0) {
+                    ordered = false;
+                }
+            }
+            if (ordered) {
+                this.sorted = elements;
+            }
+        }
+
+        public boolean isMaterialized() {
+            return sorted != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(final int index) {
+            Object[] items = sorted;
+            if (items == null) {
+                items = elements.clone();
+                Arrays.sort(items);
+                sorted = items;
+            }
+            return (T) items[index];
+        }
+
+        @Override
+        public int size() {
+            return elements.length;
+        }
+
+        /**
+         * Returns the `n` smallest items in order, selected with a bounded max
+         * heap in O(size log n) time. The ties are broken by the position in
+         * the snapshot, so the result is the same as the first `n` items of
+         * the stably sorted list.
+         */
+        @SuppressWarnings("unchecked")
+        public List<T> smallest(final int n) {
+            if (n == 0) {
+                return Collections.emptyList();
+            }
+            final Comparator<Integer> order = new Comparator<Integer>() {
+                @Override
+                public int compare(final Integer i, final Integer j) {
+                    int result = ((Comparable<Object>) elements[i]).compareTo(elements[j]);
+                    return result != 0 ? result : i.compareTo(j);
+                }
+            };
+            PriorityQueue<Integer> heap = new PriorityQueue<Integer>(n,
+                    Collections.reverseOrder(order));
+            for (int i = 0; i < elements.length; i++) {
+                if (heap.size() < n) {
+                    heap.add(i);
+                } else if (order.compare(i, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(i);
+                }
+            }
+            Integer[] indices = heap.toArray(new Integer[n]);
+            Arrays.sort(indices, order);
+            List<T> result = new ArrayList<T>(n);
+            for (Integer index : indices) {
+                result.add((T) elements[index]);
+            }
+            return unmodifiableList(result);
+        }
+    }
+
+    /**
+     * An unmodifiable list of the items of a snapshot array in reverse order.
+     */
+    private static final class ReversedView<T> extends AbstractList<T>
+            implements RandomAccess {
+
+        private final Object[] elements;
+
+        public ReversedView(final Object[] elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(final int index) {
+            if (index < 0 || index >= elements.length) {
+                throw new IndexOutOfBoundsException(
+                        "Index: " + index + ", Size: " + elements.length);
+            }
+            return (T) elements[elements.length - 1 - index];
+        }
+
+        @Override
+        public int size() {
+            return elements.length;
+        }
+    }
+
+    /**
+     * An unmodifiable set of the distinct items of a snapshot array. The hash
+     * set of the items is built only when the set is first read, and replaces
+     * the snapshot.
+     */
+    private static final class DistinctView<T> extends AbstractSet<T> {
+
+        private volatile Object[] elements;
+        private volatile Set<T> distinct;
+
+        public DistinctView(final Object[] elements) {
+            this.elements = elements;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Set<T> distinct() {
+            Set<T> items = distinct;
+            if (items == null) {
+                Object[] snapshot = elements;
+                if (snapshot == null) {
+                    return distinct;
+                }
+                items = unmodifiableSet(new HashSet<T>((List<T>) Arrays.asList(snapshot)));
+                distinct = items;
+                elements = null;
+            }
+            return items;
+        }
+
+        /**
+         * Returns the distinct items in order, or null if the hash set of the
+         * items has already replaced the snapshot. The snapshot is sorted
+         * stably, and the duplicates are dropped from each run of items which
+         * compare as equal, keeping the first occurrences.
+         */
+        @SuppressWarnings("unchecked")
+        public List<T> sortedItems() {
+            Object[] snapshot = elements;
+            if (snapshot == null) {
+                return null;
+            }
+            Object[] items = snapshot.clone();
+            Arrays.sort(items);
+            List<T> result = new ArrayList<T>(items.length);
+            int start = 0;
+            while (start < items.length) {
+                int end = start + 1;
+                while (end < items.length
+                        && ((Comparable<Object>) items[start]).compareTo(items[end]) == 0) {
+                    end++;
+                }
+                if (end - start == 1) {
+                    result.add((T) items[start]);
+                } else {
+                    result.addAll(new LinkedHashSet<T>(
+                            (List<T>) Arrays.asList(items).subList(start, end)));
+                }
+                start = end;
+            }
+            return unmodifiableList(result);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return distinct().iterator();
+        }
+
+        @Override
+        public int size() {
+            return distinct().size();
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+            return distinct().contains(o);
+        }
+    }
+
 }
@@ -18,60 +18,37 @@
 package net.abhinavsarkar.spelhelper;
 
 import java.text.MessageFormat;
-import java.util.Collections;
-import java.util.concurrent.ConcurrentHashMap;
 
-import org.springframework.core.convert.TypeDescriptor;
 import org.springframework.expression.AccessException;
 import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.MethodExecutor;
-import org.springframework.expression.MethodResolver;
 import org.springframework.expression.TypedValue;
 import org.springframework.util.Assert;
 
 final class ImplicitPropertyAccessor extends ReadOnlyGenericPropertyAccessor {
 
-    private static final ConcurrentHashMap<String, MethodExecutor> CACHE =
-        new ConcurrentHashMap<String, MethodExecutor>();
+    private final SpelHelper spelHelper;
 
-    private static final MethodExecutor NULL_ME = new MethodExecutor() {
-        @Override
-        public TypedValue execute(final EvaluationContext context, final Object target,
-                final Object... arguments) throws AccessException {
-            throw new UnsupportedOperationException("This method should never be called");
-        }
-    };
+    public ImplicitPropertyAccessor(final SpelHelper spelHelper) {
+        this.spelHelper = spelHelper;
+    }
 
     @Override
     public boolean canRead(final EvaluationContext context,
             final Object target, final String name)
             throws AccessException {
         Assert.notNull(target, "target is null");
-        String cacheKey = target.getClass().getName() + "." + name;
-        if (CACHE.containsKey(cacheKey)) {
-            return CACHE.get(cacheKey) != NULL_ME;
-        }
-
-        for (MethodResolver mr : context.getMethodResolvers()) {
-            MethodExecutor me =
-                mr.resolve(context, target, name, Collections.<TypeDescriptor>emptyList());
-            if (me != null) {
-                CACHE.putIfAbsent(cacheKey, me);
-                return true;
-            }
-        }
-
-        CACHE.putIfAbsent(cacheKey, NULL_ME);
-        return false;
+        return spelHelper.resolveImplicitProperty(context, target, name) != null;
     }
 
     @Override
     public TypedValue read(final EvaluationContext context,
             final Object target, final String name)
             throws AccessException {
-        if (canRead(context, target, name)) {
-            String cacheKey = target.getClass().getName() + "." + name;
-            return CACHE.get(cacheKey).execute(context, target, new Object[0]);
+        Assert.notNull(target, "target is null");
+        MethodExecutor executor = spelHelper.resolveImplicitProperty(context, target, name);
+        if (executor != null) {
+            return executor.execute(context, target, new Object[0]);
         }
         throw new AccessException(MessageFormat.format(
                 "Cannot read property: {0} of target: {1}", name, target));
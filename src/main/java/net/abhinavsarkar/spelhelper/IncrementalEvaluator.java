@@ -0,0 +1,338 @@
+/* Copyright 2010 Abhinav Sarkar <abhinav@abhinavsarkar.net>
+ *
+ * This file is a part of SpelHelper library.
+ *
+ * SpelHelper library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License (GNU LGPL) as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * SpelHelper library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with SpelHelper library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.abhinavsarkar.spelhelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.core.convert.TypeDescriptor;
+import org.springframework.expression.AccessException;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.MethodExecutor;
+import org.springframework.expression.MethodResolver;
+import org.springframework.expression.PropertyAccessor;
+import org.springframework.expression.TypedValue;
+import org.springframework.expression.spel.SpelNode;
+import org.springframework.expression.spel.ast.CompoundExpression;
+import org.springframework.expression.spel.ast.Indexer;
+import org.springframework.expression.spel.ast.MethodReference;
+import org.springframework.expression.spel.ast.Projection;
+import org.springframework.expression.spel.ast.PropertyOrFieldReference;
+import org.springframework.expression.spel.ast.Selection;
+import org.springframework.expression.spel.ast.VariableReference;
+import org.springframework.expression.spel.standard.SpelExpression;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.util.Assert;
+
+/**
+ * Evaluates a fixed set of SpEL expressions against a root object and
+ * re-evaluates only those expressions which depend on the properties of the
+ * root object that have changed.
+ *
+ * While evaluating an expression, the evaluator records the names of the
+ * properties and implicit properties of the root object the expression reads.
+ * When {@link IncrementalEvaluator#reevaluateIfChanged(Object, Set)} is called
+ * with the names of the changed properties, the expressions that read none of
+ * them keep their previous results.
+ *
+ * Example:
+ *
+ *     IncrementalEvaluator<Object> evaluator = new IncrementalEvaluator<Object>(
+ *         new SpelHelper(), Object.class, "price * quantity", "name.toUpperCase()");
+ *     evaluator.evaluate(order);
+ *     order.setQuantity(3);
+ *     evaluator.reevaluateIfChanged(order, Collections.singleton("quantity"));
+ *
+ * The tracking is conservative. An expression is always re-evaluated if it
+ * calls a method on the root object or uses the root object as a value, for
+ * example by passing `#root` to a function. Functions which read the root
+ * object through {@link SpelHelper#getCurrentContext()} are not tracked.
+ * Every expression is evaluated in its own context, so the variables set by
+ * one expression are not visible in the others.
+ *
+ * The instances of this class are not thread safe.
+ *
+ * @param <T>   The type of the results of the expressions.
+ * @author Abhinav Sarkar _abhinav@abhinavsarkar.net_
+ */
+public final class IncrementalEvaluator<T> {
+
+    private static final String DEPENDENCIES_KEY = IncrementalEvaluator.class.getName();
+
+    private final SpelHelper spelHelper;
+    private final Class<T> desiredType;
+    private final Expression[] expressions;
+    private final boolean[] readsWholeRoot;
+    private final Dependencies[] dependencies;
+    private final List<T> results;
+    private EvaluationContext template;
+    private int templateGeneration;
+    private Object lastRoot;
+    private boolean evaluated;
+
+    /**
+     * Creates an evaluator for the SpEL expressions `expressionStrings`.
+     * @param spelHelper    The SpelHelper to parse and evaluate the expressions with.
+     * @param desiredType   The class of the results desired.
+     * @param expressionStrings The SpEL expressions to evaluate.
+     */
+    public IncrementalEvaluator(final SpelHelper spelHelper,
+            final Class<T> desiredType, final String... expressionStrings) {
+        Assert.notNull(spelHelper, "spelHelper is null");
+        Assert.notNull(desiredType, "desiredType is null");
+        this.spelHelper = spelHelper;
+        this.desiredType = desiredType;
+        int length = expressionStrings.length;
+        this.expressions = new Expression[length];
+        this.readsWholeRoot = new boolean[length];
+        this.dependencies = new Dependencies[length];
+        this.results = new ArrayList<T>(Collections.<T>nCopies(length, null));
+        for (int i = 0; i < length; i++) {
+            expressions[i] = spelHelper.parseExpression(expressionStrings[i]);
+            readsWholeRoot[i] = readsWholeRoot(expressions[i]);
+        }
+    }
+
+    /**
+     * Evaluates all the expressions in the context of root element
+     * `rootElement` and records their dependencies.
+     * @param rootElement   The root element in context of which the
+     * expressions are to be evaluated.
+     * @return  An unmodifiable list of the results of the expressions in the
+     * order of the expressions.
+     */
+    public List<T> evaluate(final Object rootElement) {
+        for (int i = 0; i < expressions.length; i++) {
+            evaluate(i, rootElement);
+        }
+        lastRoot = rootElement;
+        evaluated = true;
+        return Collections.unmodifiableList(new ArrayList<T>(results));
+    }
+
+    /**
+     * Re-evaluates the expressions which read any of the properties
+     * `changedProperties` of the root element. All the expressions are
+     * evaluated if the root element is not the same object as the one last
+     * evaluated against.
+     * @param rootElement   The root element in context of which the
+     * expressions are to be evaluated.
+     * @param changedProperties The names of the changed properties of the
+     * root element.
+     * @return  An unmodifiable list of the results of the expressions in the
+     * order of the expressions.
+     */
+    public List<T> reevaluateIfChanged(final Object rootElement,
+            final Set<String> changedProperties) {
+        Assert.notNull(changedProperties, "changedProperties is null");
+        if (!evaluated || rootElement != lastRoot) {
+            return evaluate(rootElement);
+        }
+        for (int i = 0; i < expressions.length; i++) {
+            if (dependencies[i].dependsOn(changedProperties)) {
+                evaluate(i, rootElement);
+            }
+        }
+        return Collections.unmodifiableList(new ArrayList<T>(results));
+    }
+
+    /**
+     * Returns the names of the properties of the root element read by the
+     * expression at index `index` in its last evaluation.
+     * @param index The index of the expression.
+     * @return  An unmodifiable set of the property names, or null if the
+     * expression is re-evaluated on any change.
+     */
+    public Set<String> getDependencies(final int index) {
+        Assert.isTrue(evaluated, "Expressions have not been evaluated yet");
+        Dependencies dependency = dependencies[index];
+        return dependency.all ? null : Collections.unmodifiableSet(dependency.properties);
+    }
+
+    private void evaluate(final int index, final Object rootElement) {
+        Dependencies dependency = new Dependencies(readsWholeRoot[index]);
+        EvaluationContext context = new RootedEvaluationContext(getTemplate(),
+                rootElement, VariableSlots.of(expressions[index]));
+        context.setVariable(DEPENDENCIES_KEY, dependency);
+
+        dependencies[index] = dependency;
+        results.set(index, spelHelper.evalExpression(
+                expressions[index], context, desiredType));
+    }
+
+    /**
+     * Returns the context template with the recording accessors and resolvers,
+     * prepared again after something is registered with the SpelHelper.
+     */
+    private EvaluationContext getTemplate() {
+        int generation = spelHelper.generation();
+        if (template == null || templateGeneration != generation) {
+            StandardEvaluationContext context = spelHelper.getEvaluationContext(null);
+            List<PropertyAccessor> accessors = new ArrayList<PropertyAccessor>();
+            for (PropertyAccessor accessor : context.getPropertyAccessors()) {
+                accessors.add(new RecordingPropertyAccessor(accessor));
+            }
+            context.setPropertyAccessors(accessors);
+            List<MethodResolver> resolvers = new ArrayList<MethodResolver>();
+            for (MethodResolver resolver : context.getMethodResolvers()) {
+                resolvers.add(new RecordingMethodResolver(resolver));
+            }
+            context.setMethodResolvers(resolvers);
+            template = context;
+            templateGeneration = generation;
+        }
+        return template;
+    }
+
+    private static boolean readsWholeRoot(final Expression expression) {
+        return !(expression instanceof SpelExpression)
+            || readsWholeRoot(((SpelExpression) expression).getAST(), null, true);
+    }
+
+    private static boolean readsWholeRoot(final SpelNode node,
+            final SpelNode next, final boolean head) {
+        if (node instanceof VariableReference) {
+            String name = node.toStringAST();
+            if (("#root".equals(name) || "#this".equals(name))
+                    && !(next instanceof PropertyOrFieldReference
+                        || next instanceof MethodReference)) {
+                return true;
+            }
+        } else if (head && (node instanceof Indexer || node instanceof Selection
+                || node instanceof Projection)) {
+            return true;
+        }
+        boolean compound = node instanceof CompoundExpression;
+        int count = node.getChildCount();
+        for (int i = 0; i < count; i++) {
+            SpelNode nextChild = compound && i + 1 < count ? node.getChild(i + 1) : null;
+            if (readsWholeRoot(node.getChild(i), nextChild, !compound || i == 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Dependencies {
+        private final Set<String> properties = new HashSet<String>();
+        private boolean all;
+
+        public Dependencies(final boolean all) {
+            this.all = all;
+        }
+
+        public boolean dependsOn(final Set<String> changedProperties) {
+            if (all) {
+                return true;
+            }
+            for (String property : changedProperties) {
+                if (properties.contains(property)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public static Dependencies of(final EvaluationContext context,
+                final Object target) {
+            if (target == null || target != context.getRootObject().getValue()) {
+                return null;
+            }
+            Object dependencies = context.lookupVariable(DEPENDENCIES_KEY);
+            return dependencies instanceof Dependencies ? (Dependencies) dependencies : null;
+        }
+    }
+
+    private static final class RecordingPropertyAccessor implements PropertyAccessor {
+        private final PropertyAccessor delegate;
+
+        public RecordingPropertyAccessor(final PropertyAccessor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public Class[] getSpecificTargetClasses() {
+            return delegate.getSpecificTargetClasses();
+        }
+
+        @Override
+        public boolean canRead(final EvaluationContext context, final Object target,
+                final String name) throws AccessException {
+            return delegate.canRead(context, target, name);
+        }
+
+        @Override
+        public TypedValue read(final EvaluationContext context, final Object target,
+                final String name) throws AccessException {
+            Dependencies dependencies = Dependencies.of(context, target);
+            if (dependencies != null) {
+                dependencies.properties.add(name);
+            }
+            return delegate.read(context, target, name);
+        }
+
+        @Override
+        public boolean canWrite(final EvaluationContext context, final Object target,
+                final String name) throws AccessException {
+            return delegate.canWrite(context, target, name);
+        }
+
+        @Override
+        public void write(final EvaluationContext context, final Object target,
+                final String name, final Object newValue) throws AccessException {
+            delegate.write(context, target, name, newValue);
+        }
+    }
+
+    private static final class RecordingMethodResolver implements MethodResolver {
+        private final MethodResolver delegate;
+
+        public RecordingMethodResolver(final MethodResolver delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public MethodExecutor resolve(final EvaluationContext context,
+                final Object targetObject, final String name,
+                final List<TypeDescriptor> argumentTypes) throws AccessException {
+            final MethodExecutor executor =
+                delegate.resolve(context, targetObject, name, argumentTypes);
+            if (executor == null) {
+                return null;
+            }
+            return new MethodExecutor() {
+                @Override
+                public TypedValue execute(final EvaluationContext context,
+                        final Object target, final Object... arguments)
+                        throws AccessException {
+                    Dependencies dependencies = Dependencies.of(context, target);
+                    if (dependencies != null) {
+                        dependencies.all = true;
+                    }
+                    return executor.execute(context, target, arguments);
+                }
+            };
+        }
+    }
+
+}
@@ -0,0 +1,330 @@
+/* Copyright 2010 Abhinav Sarkar <abhinav@abhinavsarkar.net>
+ *
+ * This file is a part of SpelHelper library.
+ *
+ * SpelHelper library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License (GNU LGPL) as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * SpelHelper library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with SpelHelper library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.abhinavsarkar.spelhelper;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.expression.Expression;
+import org.springframework.util.Assert;
+
+/**
+ * A store of SpEL rules which keeps the expression strings of the rules in a
+ * memory mapped file, outside the Java heap.
+ *
+ * The rules are looked up by their ids. Only the parsed expressions of the
+ * most recently used rules are kept on the heap. The expressions of the other
+ * rules are parsed again from the mapped file when they are needed. So the
+ * heap usage of the store grows with the number of hot rules and not with the
+ * total number of rules.
+ *
+ * Example:
+ *
+ *     MappedRuleStore store = MappedRuleStore.create(
+ *         new File("rules.dat"), rules, new SpelHelper(), 10000);
+ *     boolean matched = store.evalRule("rule-42", order, Boolean.class);
+ *
+ * A rule store file can be opened again later with
+ * {@link MappedRuleStore#open(File, SpelHelper, int)}. The file must be smaller
+ * than 2 GB. The instances of this class are thread safe.
+ *
+ * @author Abhinav Sarkar _abhinav@abhinavsarkar.net_
+ */
+public final class MappedRuleStore implements Closeable {
+
+    private static final int MAGIC = 0x53505253;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int INDEX_ENTRY_SIZE = 8;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final SpelHelper spelHelper;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int size;
+    private final Map<String, Expression> hotExpressions;
+
+    private MappedRuleStore(final File file, final SpelHelper spelHelper,
+            final int hotCapacity) throws IOException {
+        Assert.notNull(spelHelper, "spelHelper is null");
+        Assert.isTrue(hotCapacity > 0, "hotCapacity should be more than 0");
+        this.spelHelper = spelHelper;
+        this.file = new RandomAccessFile(file, "r");
+        try {
+            long length = this.file.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Rule store file is larger than 2 GB: " + file);
+            }
+            this.buffer = this.file.getChannel()
+                .map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (length < HEADER_SIZE || buffer.getInt(0) != MAGIC
+                    || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a rule store file: " + file);
+            }
+            this.size = buffer.getInt(8);
+        } catch (IOException e) {
+            this.file.close();
+            throw e;
+        }
+        this.hotExpressions = new LinkedHashMap<String, Expression>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Expression> eldest) {
+                return size() > hotCapacity;
+            }
+        };
+    }
+
+    /**
+     * Writes the rules `rules` to the file `file` and opens a rule store
+     * over it. An existing file is overwritten.
+     * @param file  The file to write the rules to.
+     * @param rules The map of the ids of the rules to their SpEL expressions.
+     * @param spelHelper    The SpelHelper to parse and evaluate the rules with.
+     * @param hotCapacity   The maximum number of parsed expressions to keep on
+     * the heap.
+     * @return  The rule store over the written file.
+     * @throws IOException  If the file cannot be written or mapped.
+     */
+    public static MappedRuleStore create(final File file,
+            final Map<String, String> rules, final SpelHelper spelHelper,
+            final int hotCapacity) throws IOException {
+        Assert.notNull(file, "file is null");
+        Assert.notNull(rules, "rules is null");
+        write(file, rules);
+        return new MappedRuleStore(file, spelHelper, hotCapacity);
+    }
+
+    /**
+     * Opens a rule store over the file `file` previously written by
+     * {@link MappedRuleStore#create(File, Map, SpelHelper, int)}.
+     * @param file  The rule store file.
+     * @param spelHelper    The SpelHelper to parse and evaluate the rules with.
+     * @param hotCapacity   The maximum number of parsed expressions to keep on
+     * the heap.
+     * @return  The rule store over the file.
+     * @throws IOException  If the file cannot be mapped or is not a rule store
+     * file.
+     */
+    public static MappedRuleStore open(final File file, final SpelHelper spelHelper,
+            final int hotCapacity) throws IOException {
+        Assert.notNull(file, "file is null");
+        return new MappedRuleStore(file, spelHelper, hotCapacity);
+    }
+
+    /**
+     * Returns the number of rules in this store.
+     * @return  The number of rules.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the SpEL expression string of the rule with id `ruleId`.
+     * @param ruleId    The id of the rule.
+     * @return  The expression string of the rule if found, else null.
+     */
+    public String getExpressionString(final String ruleId) {
+        Assert.notNull(ruleId, "ruleId is null");
+        int offset = findRecord(ruleId);
+        if (offset < 0) {
+            return null;
+        }
+        int idLength = buffer.getInt(offset);
+        return readString(offset + 4 + idLength + 4,
+                buffer.getInt(offset + 4 + idLength));
+    }
+
+    /**
+     * Returns the parsed SpEL expression of the rule with id `ruleId`. The
+     * expression is parsed from the mapped file if it is not among the hot
+     * expressions.
+     * @param ruleId    The id of the rule.
+     * @return  The parsed expression of the rule.
+     * @throws IllegalArgumentException if there is no rule with the id.
+     */
+    public Expression getExpression(final String ruleId) {
+        Expression expression;
+        synchronized (hotExpressions) {
+            expression = hotExpressions.get(ruleId);
+        }
+        if (expression == null) {
+            String expressionString = getExpressionString(ruleId);
+            Assert.notNull(expressionString, "No rule found with id: " + ruleId);
+            expression = spelHelper.parseExpression(expressionString);
+            synchronized (hotExpressions) {
+                hotExpressions.put(ruleId, expression);
+            }
+        }
+        return expression;
+    }
+
+    /**
+     * Evaluates the rule with id `ruleId` in the context of root element
+     * `rootElement` and gives back a result of type `desiredType`.
+     * @param <T>   The type of the result desired.
+     * @param ruleId    The id of the rule.
+     * @param rootElement   The root element in context of which the rule
+     * is to be evaluated.
+     * @param desiredType   The class of the result desired.
+     * @return  The result of the evaluation of the rule.
+     * @throws IllegalArgumentException if there is no rule with the id.
+     * @see SpelHelper#evalExpression(Expression, Object, Class)
+     */
+    public <T> T evalRule(final String ruleId, final Object rootElement,
+            final Class<T> desiredType) {
+        return spelHelper.evalExpression(
+                getExpression(ruleId), rootElement, desiredType);
+    }
+
+    /**
+     * Closes the rule store file. The mapped region is released when it is
+     * garbage collected.
+     * @throws IOException  If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (hotExpressions) {
+            hotExpressions.clear();
+        }
+        file.close();
+    }
+
+    private int findRecord(final String ruleId) {
+        int hash = ruleId.hashCode();
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (indexHash(mid) < hash) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        byte[] idBytes = null;
+        for (int i = low; i < size && indexHash(i) == hash; i++) {
+            if (idBytes == null) {
+                idBytes = ruleId.getBytes(UTF_8);
+            }
+            int offset = buffer.getInt(HEADER_SIZE + i * INDEX_ENTRY_SIZE + 4);
+            if (idEquals(offset, idBytes)) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    private int indexHash(final int index) {
+        return buffer.getInt(HEADER_SIZE + index * INDEX_ENTRY_SIZE);
+    }
+
+    private boolean idEquals(final int offset, final byte[] idBytes) {
+        if (buffer.getInt(offset) != idBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < idBytes.length; i++) {
+            if (buffer.get(offset + 4 + i) != idBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readString(final int offset, final int length) {
+        ByteBuffer region = buffer.duplicate();
+        region.position(offset);
+        byte[] bytes = new byte[length];
+        region.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void write(final File file, final Map<String, String> rules)
+            throws IOException {
+        List<Map.Entry<String, String>> entries =
+            new ArrayList<Map.Entry<String, String>>(rules.entrySet());
+        for (Map.Entry<String, String> entry : entries) {
+            Assert.notNull(entry.getKey(), "Rule id is null");
+            Assert.notNull(entry.getValue(), "Rule is null for id: " + entry.getKey());
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<String, String>>() {
+            @Override
+            public int compare(final Map.Entry<String, String> e1,
+                    final Map.Entry<String, String> e2) {
+                int h1 = e1.getKey().hashCode();
+                int h2 = e2.getKey().hashCode();
+                return h1 < h2 ? -1 : (h1 == h2 ? 0 : 1);
+            }
+        });
+
+        int count = entries.size();
+        List<byte[]> ids = new ArrayList<byte[]>(count);
+        List<byte[]> expressions = new ArrayList<byte[]>(count);
+        long offset = HEADER_SIZE + (long) count * INDEX_ENTRY_SIZE;
+        for (Map.Entry<String, String> entry : entries) {
+            byte[] id = entry.getKey().getBytes(UTF_8);
+            byte[] expression = entry.getValue().getBytes(UTF_8);
+            ids.add(id);
+            expressions.add(expression);
+            offset += 8 + id.length + expression.length;
+        }
+        if (offset > Integer.MAX_VALUE) {
+            throw new IOException("Rules do not fit in a 2 GB rule store file");
+        }
+
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            int recordOffset = HEADER_SIZE + count * INDEX_ENTRY_SIZE;
+            for (int i = 0; i < count; i++) {
+                out.writeInt(entries.get(i).getKey().hashCode());
+                out.writeInt(recordOffset);
+                recordOffset += 8 + ids.get(i).length + expressions.get(i).length;
+            }
+            for (int i = 0; i < count; i++) {
+                out.writeInt(ids.get(i).length);
+                out.write(ids.get(i));
+                out.writeInt(expressions.get(i).length);
+                out.write(expressions.get(i));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+}
@@ -0,0 +1,72 @@
+/* Copyright 2010 Abhinav Sarkar <abhinav@abhinavsarkar.net>
+ *
+ * This file is a part of SpelHelper library.
+ *
+ * SpelHelper library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License (GNU LGPL) as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * SpelHelper library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with SpelHelper library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.abhinavsarkar.spelhelper;
+
+import java.lang.reflect.Field;
+
+import org.springframework.expression.spel.SpelNode;
+import org.springframework.expression.spel.ast.SpelNodeImpl;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Gives access to the children of the nodes of parsed SpEL expressions, so
+ * that nodes can be replaced in place. SpEL keeps the children in the
+ * protected field `children` of {@link SpelNodeImpl}, which is looked up the
+ * first time this class is used. If the field cannot be found or made
+ * accessible, the nodes are not replaced.
+ */
+final class NodeChildren {
+
+    private static final Field FIELD = find();
+
+    private NodeChildren() {
+    }
+
+    private static Field find() {
+        try {
+            Field field = ReflectionUtils.findField(SpelNodeImpl.class, "children");
+            if (field != null) {
+                ReflectionUtils.makeAccessible(field);
+            }
+            return field;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Tells if the children of the nodes can be replaced.
+     */
+    public static boolean isAccessible() {
+        return FIELD != null;
+    }
+
+    /**
+     * Returns the array of the children of the node `node`. The elements of
+     * the array can be replaced.
+     * @throws IllegalStateException if the children are not accessible.
+     */
+    public static SpelNodeImpl[] of(final SpelNode node) {
+        if (FIELD == null) {
+            throw new IllegalStateException("The field children of "
+                    + SpelNodeImpl.class.getName() + " is not accessible");
+        }
+        return (SpelNodeImpl[]) ReflectionUtils.getField(FIELD, node);
+    }
+
+}
@@ -0,0 +1,804 @@
+/* Copyright 2010 Abhinav Sarkar <abhinav@abhinavsarkar.net>
+ *
+ * This file is a part of SpelHelper library.
+ *
+ * SpelHelper library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License (GNU LGPL) as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * SpelHelper library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with SpelHelper library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.abhinavsarkar.spelhelper;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelEvaluationException;
+import org.springframework.expression.spel.SpelMessage;
+import org.springframework.expression.spel.SpelNode;
+import org.springframework.expression.spel.ast.FunctionReference;
+import org.springframework.expression.spel.ast.Literal;
+import org.springframework.expression.spel.ast.OpAnd;
+import org.springframework.expression.spel.ast.OpDivide;
+import org.springframework.expression.spel.ast.OpEQ;
+import org.springframework.expression.spel.ast.OpGE;
+import org.springframework.expression.spel.ast.OpGT;
+import org.springframework.expression.spel.ast.OpLE;
+import org.springframework.expression.spel.ast.OpLT;
+import org.springframework.expression.spel.ast.OpMinus;
+import org.springframework.expression.spel.ast.OpModulus;
+import org.springframework.expression.spel.ast.OpMultiply;
+import org.springframework.expression.spel.ast.OpNE;
+import org.springframework.expression.spel.ast.OpOr;
+import org.springframework.expression.spel.ast.OpPlus;
+import org.springframework.expression.spel.ast.OperatorNot;
+import org.springframework.expression.spel.ast.PropertyOrFieldReference;
+import org.springframework.expression.spel.ast.Ternary;
+import org.springframework.expression.spel.standard.SpelExpression;
+
+/**
+ * A SpEL expression evaluated through a primitive specialized path which gives
+ * back `long`, `double` or `boolean` values without boxing the intermediate
+ * values.
+ *
+ * The primitive path supports:
+ *
+ * 1. int, long, real and boolean literals
+ * 2. arithmetic operators: `+`, `-`, `*`, `/` and `%`
+ * 3. relational operators: `==`, `!=`, `<`, `<=`, `>` and `>=`
+ * 4. logical operators: `and`, `or` and `!`
+ * 5. the ternary operator
+ * 6. primitive properties of the root object, read from public fields,
+ * getters or no-arg methods
+ * 7. registered functions whose parameters and return type are all
+ * `int`, `long`, `double` or `boolean`
+ *
+ * The arithmetic follows SpEL: operations on two ints give an int, and are
+ * widened to long and double as SpEL does. The expression is compiled to the
+ * primitive path once per class of the root object, and again after functions
+ * or implicit methods are registered. If the expression uses anything else, it
+ * is evaluated by SpEL and the result is unboxed. A null result of SpEL
+ * evaluation causes a {@link SpelEvaluationException}.
+ *
+ * Public fields of the root object are read without allocation. Getters and
+ * functions are invoked through reflection, which boxes their arguments and
+ * return values. {@link SpelHelper#getCurrentContext()} returns null inside
+ * functions called from the primitive path.
+ *
+ * The instances of this class are thread safe.
+ *
+ * @see SpelHelper#compileNumericExpression(String)
+ * @author Abhinav Sarkar _abhinav@abhinavsarkar.net_
+ */
+public final class NumericExpression {
+
+    private static final Node FALLBACK = new Node(PrimitiveKind.BOOLEAN) {
+        @Override
+        public boolean booleanValue(final Object root) {
+            throw new UnsupportedOperationException("This method should never be called");
+        }
+    };
+
+    private final SpelHelper spelHelper;
+    private final Expression expression;
+    private volatile CompiledNodes compiled;
+
+    NumericExpression(final SpelHelper spelHelper, final Expression expression) {
+        this.spelHelper = spelHelper;
+        this.expression = expression;
+        this.compiled = new CompiledNodes(spelHelper.generation());
+    }
+
+    /**
+     * Evaluates this expression in the context of the root element
+     * `rootElement` and gives back a `long` result.
+     * @param rootElement   The root element in context of which the expression
+     * is to be evaluated.
+     * @return  The result of the evaluation of the expression.
+     */
+    public long evalLong(final Object rootElement) {
+        Node node = compiledFor(rootElement);
+        if (node == FALLBACK || node.kind == PrimitiveKind.BOOLEAN) {
+            return unbox(evalExpression(rootElement, Long.class), Long.TYPE);
+        }
+        return node.longValue(rootElement);
+    }
+
+    /**
+     * Evaluates this expression in the context of the root element
+     * `rootElement` and gives back a `double` result.
+     * @param rootElement   The root element in context of which the expression
+     * is to be evaluated.
+     * @return  The result of the evaluation of the expression.
+     */
+    public double evalDouble(final Object rootElement) {
+        Node node = compiledFor(rootElement);
+        if (node == FALLBACK || node.kind == PrimitiveKind.BOOLEAN) {
+            return unbox(evalExpression(rootElement, Double.class), Double.TYPE);
+        }
+        return node.doubleValue(rootElement);
+    }
+
+    /**
+     * Evaluates this expression in the context of the root element
+     * `rootElement` and gives back a `boolean` result.
+     * @param rootElement   The root element in context of which the expression
+     * is to be evaluated.
+     * @return  The result of the evaluation of the expression.
+     */
+    public boolean evalBoolean(final Object rootElement) {
+        Node node = compiledFor(rootElement);
+        if (node == FALLBACK || node.kind != PrimitiveKind.BOOLEAN) {
+            return unbox(evalExpression(rootElement, Boolean.class), Boolean.TYPE);
+        }
+        return node.booleanValue(rootElement);
+    }
+
+    private <T> T evalExpression(final Object rootElement, final Class<T> desiredType) {
+        return spelHelper.evalExpression(expression, rootElement, desiredType);
+    }
+
+    private static <T> T unbox(final T value, final Class<?> primitiveType) {
+        if (value == null) {
+            throw new SpelEvaluationException(
+                    SpelMessage.TYPE_CONVERSION_ERROR, "null", primitiveType.getName());
+        }
+        return value;
+    }
+
+    /**
+     * Tells if this expression is evaluated through the primitive path for
+     * root elements of class `rootClass`.
+     * @param rootClass The class of the root elements, null for null roots.
+     * @return  true if the primitive path is used, else false.
+     */
+    public boolean isCompiledFor(final Class<?> rootClass) {
+        return compile(rootClass) != FALLBACK;
+    }
+
+    /**
+     * Returns the SpEL expression string of this expression.
+     * @return  The expression string.
+     */
+    public String getExpressionString() {
+        return expression.getExpressionString();
+    }
+
+    private Node compiledFor(final Object rootElement) {
+        return compile(rootElement == null ? null : rootElement.getClass());
+    }
+
+    private Node compile(final Class<?> rootClass) {
+        int generation = spelHelper.generation();
+        CompiledNodes nodes = compiled;
+        if (nodes.generation != generation) {
+            nodes = new CompiledNodes(generation);
+            compiled = nodes;
+        }
+        Class<?> key = rootClass == null ? Void.class : rootClass;
+        Node node = nodes.get(key);
+        if (node == null) {
+            node = expression instanceof SpelExpression
+                ? compile(((SpelExpression) expression).getAST(), rootClass) : null;
+            if (node == null) {
+                node = FALLBACK;
+            }
+            nodes.putIfAbsent(key, node);
+        }
+        return node;
+    }
+
+    private Node compile(final SpelNode node, final Class<?> rootClass) {
+        if (node instanceof Literal) {
+            return literal(((Literal) node).getLiteralValue().getValue());
+        }
+        if (node instanceof PropertyOrFieldReference) {
+            return rootClass == null ? null
+                : property(rootClass, ((PropertyOrFieldReference) node).getName());
+        }
+        if (node instanceof FunctionReference) {
+            return function(node, rootClass);
+        }
+        Node[] operands = new Node[node.getChildCount()];
+        for (int i = 0; i < operands.length; i++) {
+            operands[i] = compile(node.getChild(i), rootClass);
+            if (operands[i] == null) {
+                return null;
+            }
+        }
+        if (node instanceof OpPlus || node instanceof OpMinus
+                || node instanceof OpMultiply || node instanceof OpDivide
+                || node instanceof OpModulus) {
+            if (operands.length == 1) {
+                return node instanceof OpPlus ? numeric(operands[0])
+                    : node instanceof OpMinus ? Arithmetic.negate(numeric(operands[0]))
+                    : null;
+            }
+            return Arithmetic.create(node, numeric(operands[0]), numeric(operands[1]));
+        }
+        if (node instanceof OpEQ || node instanceof OpNE || node instanceof OpLT
+                || node instanceof OpLE || node instanceof OpGT || node instanceof OpGE) {
+            return Comparison.create(node, operands[0], operands[1]);
+        }
+        if (node instanceof OpAnd || node instanceof OpOr) {
+            return Logical.create(node instanceof OpAnd,
+                    bool(operands[0]), bool(operands[1]));
+        }
+        if (node instanceof OperatorNot) {
+            return Logical.not(bool(operands[0]));
+        }
+        if (node instanceof Ternary) {
+            return Conditional.create(bool(operands[0]), operands[1], operands[2]);
+        }
+        return null;
+    }
+
+    private static Node numeric(final Node node) {
+        return node == null || node.kind == PrimitiveKind.BOOLEAN ? null : node;
+    }
+
+    private static Node bool(final Node node) {
+        return node == null || node.kind != PrimitiveKind.BOOLEAN ? null : node;
+    }
+
+    private static Node literal(final Object value) {
+        PrimitiveKind kind = PrimitiveKind.ofLiteral(value);
+        return kind == null ? null : new Constant(kind, value);
+    }
+
+    private static Node property(final Class<?> rootClass, final String name) {
+        String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        Method getter = findMethod(rootClass, "get" + suffix);
+        if (getter == null) {
+            getter = findMethod(rootClass, "is" + suffix);
+            if (getter != null && getter.getReturnType() != boolean.class) {
+                getter = null;
+            }
+        }
+        if (getter != null) {
+            return read(getter);
+        }
+        try {
+            Field field = rootClass.getField(name);
+            PrimitiveKind kind = PrimitiveKind.of(field.getType());
+            if (!Modifier.isStatic(field.getModifiers())) {
+                return kind == null ? null : new FieldRead(kind, field);
+            }
+        } catch (NoSuchFieldException e) {
+            // not a field, try a no-arg method as an implicit property
+        }
+        Method method = findMethod(rootClass, name);
+        return method == null ? null : read(method);
+    }
+
+    private static Method findMethod(final Class<?> rootClass, final String name) {
+        try {
+            Method method = rootClass.getMethod(name);
+            return Modifier.isStatic(method.getModifiers()) ? null : method;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static Node read(final Method method) {
+        PrimitiveKind kind = PrimitiveKind.of(method.getReturnType());
+        if (kind == null) {
+            return null;
+        }
+        if (!Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+            method.setAccessible(true);
+        }
+        return new MethodCall(kind, method, null, null);
+    }
+
+    private Node function(final SpelNode node, final Class<?> rootClass) {
+        String ast = node.toStringAST();
+        Method method = spelHelper.lookupFunction(ast.substring(1, ast.indexOf('(')));
+        PrimitiveKind[] parameterKinds = PrimitiveKind.parametersOf(method, node.getChildCount());
+        if (parameterKinds == null) {
+            return null;
+        }
+        Node[] arguments = new Node[parameterKinds.length];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = compile(node.getChild(i), rootClass);
+            if (arguments[i] == null || !parameterKinds[i].accepts(arguments[i].kind)) {
+                return null;
+            }
+        }
+        return new MethodCall(PrimitiveKind.of(method.getReturnType()),
+                method, parameterKinds, arguments);
+    }
+
+    /**
+     * The compiled nodes per class of the root object, valid as long as the
+     * generation of the SpelHelper does not change.
+     */
+    private static final class CompiledNodes extends ConcurrentHashMap<Class<?>, Node> {
+        private static final long serialVersionUID = 1L;
+
+        private final int generation;
+
+        public CompiledNodes(final int generation) {
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * A node of the compiled expression. A node gives back the values of its
+     * own kind and the values of the wider kinds.
+     */
+    private abstract static class Node {
+        protected final PrimitiveKind kind;
+
+        protected Node(final PrimitiveKind kind) {
+            this.kind = kind;
+        }
+
+        public long longValue(final Object root) {
+            return kind == PrimitiveKind.DOUBLE ? (long) doubleValue(root) : intValue(root);
+        }
+
+        public int intValue(final Object root) {
+            throw new UnsupportedOperationException("Not an int node");
+        }
+
+        public double doubleValue(final Object root) {
+            return longValue(root);
+        }
+
+        public boolean booleanValue(final Object root) {
+            throw new UnsupportedOperationException("Not a boolean node");
+        }
+    }
+
+    private static final class Constant extends Node {
+        private final long longValue;
+        private final double doubleValue;
+        private final boolean booleanValue;
+
+        public Constant(final PrimitiveKind kind, final Object value) {
+            super(kind);
+            this.longValue = kind == PrimitiveKind.BOOLEAN ? 0 : ((Number) value).longValue();
+            this.doubleValue = kind == PrimitiveKind.BOOLEAN ? 0 : ((Number) value).doubleValue();
+            this.booleanValue = kind == PrimitiveKind.BOOLEAN && ((Boolean) value).booleanValue();
+        }
+
+        @Override
+        public int intValue(final Object root) {
+            return (int) longValue;
+        }
+
+        @Override
+        public long longValue(final Object root) {
+            return kind == PrimitiveKind.DOUBLE ? (long) doubleValue : longValue;
+        }
+
+        @Override
+        public double doubleValue(final Object root) {
+            return doubleValue;
+        }
+
+        @Override
+        public boolean booleanValue(final Object root) {
+            return booleanValue;
+        }
+    }
+
+    private static final class FieldRead extends Node {
+        private final Field field;
+
+        public FieldRead(final PrimitiveKind kind, final Field field) {
+            super(kind);
+            this.field = field;
+        }
+
+        @Override
+        public int intValue(final Object root) {
+            try {
+                return field.getInt(root);
+            } catch (IllegalAccessException e) {
+                throw readError(field.getName(), e);
+            }
+        }
+
+        @Override
+        public long longValue(final Object root) {
+            try {
+                return kind == PrimitiveKind.DOUBLE ? (long) field.getDouble(root) : field.getLong(root);
+            } catch (IllegalAccessException e) {
+                throw readError(field.getName(), e);
+            }
+        }
+
+        @Override
+        public double doubleValue(final Object root) {
+            try {
+                return field.getDouble(root);
+            } catch (IllegalAccessException e) {
+                throw readError(field.getName(), e);
+            }
+        }
+
+        @Override
+        public boolean booleanValue(final Object root) {
+            try {
+                return field.getBoolean(root);
+            } catch (IllegalAccessException e) {
+                throw readError(field.getName(), e);
+            }
+        }
+    }
+
+    private static final class MethodCall extends Node {
+        private final Method method;
+        private final PrimitiveKind[] parameterKinds;
+        private final Node[] arguments;
+
+        public MethodCall(final PrimitiveKind kind, final Method method, final PrimitiveKind[] parameterKinds,
+                final Node[] arguments) {
+            super(kind);
+            this.method = method;
+            this.parameterKinds = parameterKinds;
+            this.arguments = arguments;
+        }
+
+        private Object invoke(final Object root) {
+            try {
+                if (arguments == null) {
+                    return method.invoke(root);
+                }
+                Object[] values = new Object[arguments.length];
+                for (int i = 0; i < values.length; i++) {
+                    switch (parameterKinds[i]) {
+                    case INT:
+                        values[i] = arguments[i].intValue(root);
+                        break;
+                    case LONG:
+                        values[i] = arguments[i].longValue(root);
+                        break;
+                    case DOUBLE:
+                        values[i] = arguments[i].doubleValue(root);
+                        break;
+                    default:
+                        values[i] = arguments[i].booleanValue(root);
+                    }
+                }
+                return method.invoke(null, values);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw invocationError(method, e.getCause());
+            } catch (IllegalAccessException e) {
+                throw invocationError(method, e);
+            }
+        }
+
+        @Override
+        public int intValue(final Object root) {
+            return ((Number) invoke(root)).intValue();
+        }
+
+        @Override
+        public long longValue(final Object root) {
+            return ((Number) invoke(root)).longValue();
+        }
+
+        @Override
+        public double doubleValue(final Object root) {
+            return ((Number) invoke(root)).doubleValue();
+        }
+
+        @Override
+        public boolean booleanValue(final Object root) {
+            return ((Boolean) invoke(root)).booleanValue();
+        }
+    }
+
+    private abstract static class Arithmetic extends Node {
+        protected final Node left;
+        protected final Node right;
+
+        protected Arithmetic(final PrimitiveKind kind, final Node left, final Node right) {
+            super(kind);
+            this.left = left;
+            this.right = right;
+        }
+
+        public static Node create(final SpelNode operator,
+                final Node left, final Node right) {
+            if (left == null || right == null) {
+                return null;
+            }
+            PrimitiveKind kind = left.kind.wider(right.kind);
+            if (operator instanceof OpPlus) {
+                return new Arithmetic(kind, left, right) {
+                    @Override
+                    public int intValue(final Object root) {
+                        return this.left.intValue(root) + this.right.intValue(root);
+                    }
+
+                    @Override
+                    public long longValue(final Object root) {
+                        return this.kind == PrimitiveKind.INT ? intValue(root)
+                            : this.kind == PrimitiveKind.DOUBLE ? (long) doubleValue(root)
+                            : this.left.longValue(root) + this.right.longValue(root);
+                    }
+
+                    @Override
+                    public double doubleValue(final Object root) {
+                        return this.kind != PrimitiveKind.DOUBLE ? longValue(root)
+                            : this.left.doubleValue(root) + this.right.doubleValue(root);
+                    }
+                };
+            } else if (operator instanceof OpMinus) {
+                return new Arithmetic(kind, left, right) {
+                    @Override
+                    public int intValue(final Object root) {
+                        return this.left.intValue(root) - this.right.intValue(root);
+                    }
+
+                    @Override
+                    public long longValue(final Object root) {
+                        return this.kind == PrimitiveKind.INT ? intValue(root)
+                            : this.kind == PrimitiveKind.DOUBLE ? (long) doubleValue(root)
+                            : this.left.longValue(root) - this.right.longValue(root);
+                    }
+
+                    @Override
+                    public double doubleValue(final Object root) {
+                        return this.kind != PrimitiveKind.DOUBLE ? longValue(root)
+                            : this.left.doubleValue(root) - this.right.doubleValue(root);
+                    }
+                };
+            } else if (operator instanceof OpMultiply) {
+                return new Arithmetic(kind, left, right) {
+                    @Override
+                    public int intValue(final Object root) {
+                        return this.left.intValue(root) * this.right.intValue(root);
+                    }
+
+                    @Override
+                    public long longValue(final Object root) {
+                        return this.kind == PrimitiveKind.INT ? intValue(root)
+                            : this.kind == PrimitiveKind.DOUBLE ? (long) doubleValue(root)
+                            : this.left.longValue(root) * this.right.longValue(root);
+                    }
+
+                    @Override
+                    public double doubleValue(final Object root) {
+                        return this.kind != PrimitiveKind.DOUBLE ? longValue(root)
+                            : this.left.doubleValue(root) * this.right.doubleValue(root);
+                    }
+                };
+            } else if (operator instanceof OpDivide) {
+                return new Arithmetic(kind, left, right) {
+                    @Override
+                    public int intValue(final Object root) {
+                        return this.left.intValue(root) / this.right.intValue(root);
+                    }
+
+                    @Override
+                    public long longValue(final Object root) {
+                        return this.kind == PrimitiveKind.INT ? intValue(root)
+                            : this.kind == PrimitiveKind.DOUBLE ? (long) doubleValue(root)
+                            : this.left.longValue(root) / this.right.longValue(root);
+                    }
+
+                    @Override
+                    public double doubleValue(final Object root) {
+                        return this.kind != PrimitiveKind.DOUBLE ? longValue(root)
+                            : this.left.doubleValue(root) / this.right.doubleValue(root);
+                    }
+                };
+            } else {
+                return new Arithmetic(kind, left, right) {
+                    @Override
+                    public int intValue(final Object root) {
+                        return this.left.intValue(root) % this.right.intValue(root);
+                    }
+
+                    @Override
+                    public long longValue(final Object root) {
+                        return this.kind == PrimitiveKind.INT ? intValue(root)
+                            : this.kind == PrimitiveKind.DOUBLE ? (long) doubleValue(root)
+                            : this.left.longValue(root) % this.right.longValue(root);
+                    }
+
+                    @Override
+                    public double doubleValue(final Object root) {
+                        return this.kind != PrimitiveKind.DOUBLE ? longValue(root)
+                            : this.left.doubleValue(root) % this.right.doubleValue(root);
+                    }
+                };
+            }
+        }
+
+        public static Node negate(final Node operand) {
+            if (operand == null) {
+                return null;
+            }
+            return new Arithmetic(operand.kind, operand, null) {
+                @Override
+                public int intValue(final Object root) {
+                    return -this.left.intValue(root);
+                }
+
+                @Override
+                public long longValue(final Object root) {
+                    return this.kind == PrimitiveKind.INT ? intValue(root)
+                        : this.kind == PrimitiveKind.DOUBLE ? (long) doubleValue(root)
+                        : -this.left.longValue(root);
+                }
+
+                @Override
+                public double doubleValue(final Object root) {
+                    return this.kind != PrimitiveKind.DOUBLE ? longValue(root)
+                        : -this.left.doubleValue(root);
+                }
+            };
+        }
+    }
+
+    private static final class Comparison extends Node {
+        private static final int EQ = 0, NE = 1, LT = 2, LE = 3, GT = 4, GE = 5;
+
+        private final int operator;
+        private final PrimitiveKind operandKind;
+        private final Node left;
+        private final Node right;
+
+        private Comparison(final int operator, final Node left, final Node right) {
+            super(PrimitiveKind.BOOLEAN);
+            this.operator = operator;
+            this.operandKind = left.kind.wider(right.kind);
+            this.left = left;
+            this.right = right;
+        }
+
+        public static Node create(final SpelNode node, final Node left, final Node right) {
+            int operator = node instanceof OpEQ ? EQ : node instanceof OpNE ? NE
+                : node instanceof OpLT ? LT : node instanceof OpLE ? LE
+                : node instanceof OpGT ? GT : GE;
+            boolean booleans = left.kind == PrimitiveKind.BOOLEAN && right.kind == PrimitiveKind.BOOLEAN;
+            if (booleans ? operator > NE
+                    : left.kind == PrimitiveKind.BOOLEAN || right.kind == PrimitiveKind.BOOLEAN) {
+                return null;
+            }
+            return new Comparison(operator, left, right);
+        }
+
+        @Override
+        public boolean booleanValue(final Object root) {
+            int comparison;
+            if (operandKind == PrimitiveKind.BOOLEAN) {
+                comparison = left.booleanValue(root) == right.booleanValue(root) ? 0 : 1;
+            } else if (operandKind == PrimitiveKind.DOUBLE) {
+                double l = left.doubleValue(root);
+                double r = right.doubleValue(root);
+                comparison = l < r ? -1 : (l > r ? 1 : (l == r ? 0 : 2));
+            } else {
+                long l = left.longValue(root);
+                long r = right.longValue(root);
+                comparison = l < r ? -1 : (l == r ? 0 : 1);
+            }
+            switch (operator) {
+            case EQ:
+                return comparison == 0;
+            case NE:
+                return comparison != 0;
+            case LT:
+                return comparison == -1;
+            case LE:
+                return comparison == -1 || comparison == 0;
+            case GT:
+                return comparison == 1;
+            default:
+                return comparison == 1 || comparison == 0;
+            }
+        }
+    }
+
+    private static final class Logical extends Node {
+        private final boolean and;
+        private final Node left;
+        private final Node right;
+
+        private Logical(final boolean and, final Node left, final Node right) {
+            super(PrimitiveKind.BOOLEAN);
+            this.and = and;
+            this.left = left;
+            this.right = right;
+        }
+
+        public static Node create(final boolean and, final Node left, final Node right) {
+            return left == null || right == null ? null : new Logical(and, left, right);
+        }
+
+        public static Node not(final Node operand) {
+            return operand == null ? null : new Logical(false, operand, null);
+        }
+
+        @Override
+        public boolean booleanValue(final Object root) {
+            if (right == null) {
+                return !left.booleanValue(root);
+            }
+            return and ? left.booleanValue(root) && right.booleanValue(root)
+                : left.booleanValue(root) || right.booleanValue(root);
+        }
+    }
+
+    private static final class Conditional extends Node {
+        private final Node condition;
+        private final Node ifTrue;
+        private final Node ifFalse;
+
+        private Conditional(final PrimitiveKind kind, final Node condition,
+                final Node ifTrue, final Node ifFalse) {
+            super(kind);
+            this.condition = condition;
+            this.ifTrue = ifTrue;
+            this.ifFalse = ifFalse;
+        }
+
+        public static Node create(final Node condition, final Node ifTrue,
+                final Node ifFalse) {
+            if (condition == null
+                    || (ifTrue.kind == PrimitiveKind.BOOLEAN) != (ifFalse.kind == PrimitiveKind.BOOLEAN)) {
+                return null;
+            }
+            return new Conditional(ifTrue.kind.wider(ifFalse.kind),
+                    condition, ifTrue, ifFalse);
+        }
+
+        @Override
+        public int intValue(final Object root) {
+            return condition.booleanValue(root)
+                ? ifTrue.intValue(root) : ifFalse.intValue(root);
+        }
+
+        @Override
+        public long longValue(final Object root) {
+            return condition.booleanValue(root)
+                ? ifTrue.longValue(root) : ifFalse.longValue(root);
+        }
+
+        @Override
+        public double doubleValue(final Object root) {
+            return condition.booleanValue(root)
+                ? ifTrue.doubleValue(root) : ifFalse.doubleValue(root);
+        }
+
+        @Override
+        public boolean booleanValue(final Object root) {
+            return condition.booleanValue(root)
+                ? ifTrue.booleanValue(root) : ifFalse.booleanValue(root);
+        }
+    }
+
+    private static SpelEvaluationException readError(final String name,
+            final Throwable cause) {
+        return new SpelEvaluationException(cause,
+                SpelMessage.EXCEPTION_DURING_PROPERTY_READ, name, cause.getMessage());
+    }
+
+    private static SpelEvaluationException invocationError(final Method method,
+            final Throwable cause) {
+        return new SpelEvaluationException(cause,
+                SpelMessage.EXCEPTION_DURING_FUNCTION_CALL, method.getName(),
+                cause.getMessage());
+    }
+
+}
@@ -0,0 +1,104 @@
+/* Copyright 2010 Abhinav Sarkar <abhinav@abhinavsarkar.net>
+ *
+ * This file is a part of SpelHelper library.
+ *
+ * SpelHelper library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License (GNU LGPL) as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * SpelHelper library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with SpelHelper library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.abhinavsarkar.spelhelper;
+
+import java.lang.reflect.Method;
+
+/**
+ * The kinds of the primitive values computed by {@link NumericExpression}
+ * and {@link ColumnarExpression}. The numeric kinds are declared in the order
+ * in which SpEL widens them: an operation on two values gives a value of the
+ * wider kind.
+ */
+enum PrimitiveKind {
+
+    INT, LONG, DOUBLE, BOOLEAN;
+
+    /**
+     * Returns the kind of the values of the type `type`, null if they are not
+     * primitive. Shorts and bytes are read as ints.
+     */
+    public static PrimitiveKind of(final Class<?> type) {
+        if (type == int.class || type == short.class || type == byte.class) {
+            return INT;
+        } else if (type == long.class) {
+            return LONG;
+        } else if (type == double.class) {
+            return DOUBLE;
+        } else if (type == boolean.class) {
+            return BOOLEAN;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the kind of the value of a SpEL literal, null if it is not an
+     * int, long, real or boolean literal.
+     */
+    public static PrimitiveKind ofLiteral(final Object value) {
+        if (value instanceof Integer) {
+            return INT;
+        } else if (value instanceof Long) {
+            return LONG;
+        } else if (value instanceof Double) {
+            return DOUBLE;
+        } else if (value instanceof Boolean) {
+            return BOOLEAN;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the kinds of the parameters of the registered function `method`
+     * called with `argumentCount` arguments, or null if it cannot be called
+     * with primitive values: if it takes variable arguments or a different
+     * number of arguments, or if its parameters and return type are not all
+     * `int`, `long`, `double` or `boolean`.
+     */
+    public static PrimitiveKind[] parametersOf(final Method method, final int argumentCount) {
+        if (method == null || method.isVarArgs() || of(method.getReturnType()) == null) {
+            return null;
+        }
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (parameterTypes.length != argumentCount) {
+            return null;
+        }
+        PrimitiveKind[] parameterKinds = new PrimitiveKind[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            parameterKinds[i] = of(parameterTypes[i]);
+            if (parameterKinds[i] == null
+                    || parameterTypes[i] == short.class || parameterTypes[i] == byte.class) {
+                return null;
+            }
+        }
+        return parameterKinds;
+    }
+
+    public PrimitiveKind wider(final PrimitiveKind other) {
+        return compareTo(other) >= 0 ? this : other;
+    }
+
+    /**
+     * Tells if a value of the kind `argument` can be passed for a parameter of
+     * this kind without narrowing it.
+     */
+    public boolean accepts(final PrimitiveKind argument) {
+        return (this == BOOLEAN) == (argument == BOOLEAN) && wider(argument) == this;
+    }
+
+}
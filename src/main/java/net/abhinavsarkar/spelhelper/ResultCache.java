@@ -0,0 +1,352 @@
+/* Copyright 2010 Abhinav Sarkar <abhinav@abhinavsarkar.net>
+ *
+ * This file is a part of SpelHelper library.
+ *
+ * SpelHelper library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License (GNU LGPL) as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * SpelHelper library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with SpelHelper library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.abhinavsarkar.spelhelper;
+
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelNode;
+import org.springframework.expression.spel.ast.Assign;
+import org.springframework.expression.spel.ast.BeanReference;
+import org.springframework.expression.spel.ast.ConstructorReference;
+import org.springframework.expression.spel.ast.FunctionReference;
+import org.springframework.expression.spel.ast.MethodReference;
+import org.springframework.expression.spel.ast.PropertyOrFieldReference;
+import org.springframework.expression.spel.ast.TypeReference;
+import org.springframework.expression.spel.ast.VariableReference;
+import org.springframework.expression.spel.standard.SpelExpression;
+import org.springframework.util.Assert;
+
+/**
+ * A bounded cache of the results of SpEL expressions evaluated with a
+ * {@link SpelHelper}, keyed by the expression, the root element and the
+ * desired type.
+ *
+ * The root elements are compared by equality. A fingerprint of the root
+ * element, like a version number, can be given instead and is compared in
+ * its place. When the result of an expression is found in the cache, the
+ * expression is neither parsed nor evaluated.
+ *
+ * Example:
+ *
+ *     ResultCache cache = new ResultCache(new SpelHelper(), 10000, 5, TimeUnit.MINUTES);
+ *     String tier = cache.evalExpression("customer.tier", config, String.class);
+ *
+ * Only the results of the deterministic expressions are cached. An expression
+ * is deterministic if all the extension functions and implicit methods it may
+ * call are marked {@link Deterministic}, and it does not assign variables,
+ * create objects, or refer to types or beans. The methods and properties of
+ * the root elements are assumed to have no side effects. The other
+ * expressions are evaluated every time.
+ *
+ * The cached results are shared by the callers, so they should not be
+ * modified. The cache is cleared when functions or implicit methods are
+ * registered with the SpelHelper. The instances of this class are thread safe.
+ *
+ * @author Abhinav Sarkar _abhinav@abhinavsarkar.net_
+ */
+public final class ResultCache {
+
+    private static final Object NULL_RESULT = new Object();
+
+    private final SpelHelper spelHelper;
+    private final long ttlNanos;
+    private final Map<Key, CachedResult> results;
+    private final Map<String, ParsedExpression> expressions;
+    private EvaluationContext template;
+
+    /**
+     * Creates a result cache over the SpelHelper `spelHelper`.
+     * @param spelHelper    The SpelHelper to parse and evaluate the expressions with.
+     * @param maxSize   The maximum number of results to cache. The least
+     * recently used results are evicted first.
+     * @param ttl   The time for which a result is kept, 0 to keep the results
+     * until they are evicted or invalidated.
+     * @param unit  The unit of `ttl`.
+     */
+    public ResultCache(final SpelHelper spelHelper, final int maxSize,
+            final long ttl, final TimeUnit unit) {
+        Assert.notNull(spelHelper, "spelHelper is null");
+        Assert.isTrue(maxSize > 0, "maxSize should be more than 0");
+        Assert.isTrue(ttl >= 0, "ttl should not be negative");
+        Assert.notNull(unit, "unit is null");
+        this.spelHelper = spelHelper;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.results = new LinkedHashMap<Key, CachedResult>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, CachedResult> eldest) {
+                return size() > maxSize;
+            }
+        };
+        this.expressions = new LinkedHashMap<String, ParsedExpression>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, ParsedExpression> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Evaluates a SpEL expression `expressionString` in the context of root
+     * element `rootElement` and gives back a result of type `desiredType`,
+     * from the cache if the same expression was evaluated for an equal root
+     * element before.
+     * @param <T>   The type of the result desired.
+     * @param expressionString  The SpEL expression to evaluate.
+     * @param rootElement   The root element in context of which the expression
+     * is to be evaluated.
+     * @param desiredType   The class of the result desired.
+     * @return  The result of the evaluation of the expression.
+     * @see SpelHelper#evalExpression(String, Object, Class)
+     */
+    public <T> T evalExpression(final String expressionString,
+            final Object rootElement, final Class<T> desiredType) {
+        return evalExpression(expressionString, rootElement, rootElement, desiredType);
+    }
+
+    /**
+     * Evaluates a SpEL expression `expressionString` in the context of root
+     * element `rootElement` and gives back a result of type `desiredType`,
+     * from the cache if the same expression was evaluated for a root element
+     * with an equal fingerprint before.
+     * @param <T>   The type of the result desired.
+     * @param expressionString  The SpEL expression to evaluate.
+     * @param rootElement   The root element in context of which the expression
+     * is to be evaluated.
+     * @param fingerprint   The fingerprint identifying the state of the root
+     * element.
+     * @param desiredType   The class of the result desired.
+     * @return  The result of the evaluation of the expression.
+     * @see SpelHelper#evalExpression(String, Object, Class)
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T evalExpression(final String expressionString, final Object rootElement,
+            final Object fingerprint, final Class<T> desiredType) {
+        Assert.notNull(expressionString, "expressionString is null");
+        Assert.notNull(desiredType, "desiredType is null");
+        Key key = new Key(expressionString, fingerprint, desiredType);
+        long now = System.nanoTime();
+        synchronized (this) {
+            checkTemplate();
+            CachedResult entry = results.get(key);
+            if (entry != null) {
+                if (ttlNanos == 0 || now - entry.created < ttlNanos) {
+                    return entry.value == NULL_RESULT ? null : (T) entry.value;
+                }
+                results.remove(key);
+            }
+        }
+
+        ParsedExpression parsed = parse(expressionString);
+        T result = spelHelper.evalExpression(parsed.expression, rootElement, desiredType);
+        if (parsed.deterministic) {
+            synchronized (this) {
+                results.put(key, new CachedResult(result == null ? NULL_RESULT : result, now));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Tells if the results of the SpEL expression `expressionString` are cached.
+     * @param expressionString  The SpEL expression.
+     * @return  true if the expression is deterministic, else false.
+     */
+    public boolean isCacheable(final String expressionString) {
+        Assert.notNull(expressionString, "expressionString is null");
+        return parse(expressionString).deterministic;
+    }
+
+    /**
+     * Removes the cached results of all the expressions for the root element,
+     * or the fingerprint, `fingerprint`.
+     * @param fingerprint   The root element or its fingerprint.
+     */
+    public synchronized void invalidate(final Object fingerprint) {
+        for (Iterator<Key> iterator = results.keySet().iterator(); iterator.hasNext();) {
+            Object keyFingerprint = iterator.next().fingerprint;
+            if (fingerprint == null ? keyFingerprint == null : fingerprint.equals(keyFingerprint)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all the cached results.
+     */
+    public synchronized void invalidateAll() {
+        results.clear();
+    }
+
+    /**
+     * Returns the number of cached results.
+     * @return  The number of cached results.
+     */
+    public synchronized int size() {
+        checkTemplate();
+        return results.size();
+    }
+
+    /**
+     * Clears the cache if functions or implicit methods have been registered
+     * with the SpelHelper since the last call.
+     */
+    private void checkTemplate() {
+        EvaluationContext current = spelHelper.getContextTemplate();
+        if (current != template) {
+            results.clear();
+            expressions.clear();
+            template = current;
+        }
+    }
+
+    private ParsedExpression parse(final String expressionString) {
+        ParsedExpression parsed;
+        synchronized (this) {
+            checkTemplate();
+            parsed = expressions.get(expressionString);
+        }
+        if (parsed == null) {
+            Expression expression = spelHelper.parseExpression(expressionString);
+            parsed = new ParsedExpression(expression,
+                    expression instanceof SpelExpression
+                    && isDeterministic(((SpelExpression) expression).getAST()));
+            synchronized (this) {
+                expressions.put(expressionString, parsed);
+            }
+        }
+        return parsed;
+    }
+
+    private boolean isDeterministic(final SpelNode node) {
+        if (node instanceof Assign || node instanceof ConstructorReference
+                || node instanceof TypeReference || node instanceof BeanReference) {
+            return false;
+        }
+        if (node instanceof FunctionReference) {
+            String ast = node.toStringAST();
+            Method function = spelHelper.lookupFunction(ast.substring(1, ast.indexOf('(')));
+            if (function == null || !isDeterministic(function)) {
+                return false;
+            }
+        } else if (node instanceof VariableReference) {
+            String name = node.toStringAST().substring(1);
+            if (!"this".equals(name) && !"root".equals(name)) {
+                return false;
+            }
+        } else if (node instanceof MethodReference) {
+            String ast = node.toStringAST();
+            if (!isDeterministic(spelHelper.lookupImplicitMethods(
+                    ast.substring(0, ast.indexOf('('))))) {
+                return false;
+            }
+        } else if (node instanceof PropertyOrFieldReference) {
+            if (!isDeterministic(spelHelper.lookupImplicitMethods(
+                    ((PropertyOrFieldReference) node).getName()))) {
+                return false;
+            }
+        }
+        for (int i = 0; i < node.getChildCount(); i++) {
+            if (!isDeterministic(node.getChild(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDeterministic(final List<Method> methods) {
+        for (Method method : methods) {
+            if (!isDeterministic(method)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDeterministic(final Method method) {
+        return method.isAnnotationPresent(Deterministic.class)
+            || method.getDeclaringClass().isAnnotationPresent(Deterministic.class);
+    }
+
+    private static final class ParsedExpression {
+        private final Expression expression;
+        private final boolean deterministic;
+
+        public ParsedExpression(final Expression expression, final boolean deterministic) {
+            this.expression = expression;
+            this.deterministic = deterministic;
+        }
+    }
+
+    private static final class CachedResult {
+        private final Object value;
+        private final long created;
+
+        public CachedResult(final Object value, final long created) {
+            this.value = value;
+            this.created = created;
+        }
+    }
+
+    private static final class Key {
+        private final String expressionString;
+        private final Object fingerprint;
+        private final Class<?> desiredType;
+
+        public Key(final String expressionString, final Object fingerprint,
+                final Class<?> desiredType) {
+            this.expressionString = expressionString;
+            this.fingerprint = fingerprint;
+            this.desiredType = desiredType;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return expressionString.equals(other.expressionString)
+                && desiredType == other.desiredType
+                && (fingerprint == null ? other.fingerprint == null
+                    : fingerprint.equals(other.fingerprint));
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = expressionString.hashCode();
+            hash = 31 * hash + desiredType.hashCode();
+            return 31 * hash + (fingerprint == null ? 0 : fingerprint.hashCode());
+        }
+    }
+
+}
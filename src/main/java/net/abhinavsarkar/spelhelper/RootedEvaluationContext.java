@@ -0,0 +1,160 @@
+/* Copyright 2010 Abhinav Sarkar <abhinav@abhinavsarkar.net>
+ *
+ * This file is a part of SpelHelper library.
+ *
+ * SpelHelper library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License (GNU LGPL) as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * SpelHelper library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with SpelHelper library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.abhinavsarkar.spelhelper;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.expression.BeanResolver;
+import org.springframework.expression.ConstructorResolver;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.MethodResolver;
+import org.springframework.expression.OperatorOverloader;
+import org.springframework.expression.PropertyAccessor;
+import org.springframework.expression.TypeComparator;
+import org.springframework.expression.TypeConverter;
+import org.springframework.expression.TypeLocator;
+import org.springframework.expression.TypedValue;
+
+/**
+ * An evaluation context for a single evaluation which shares the resolvers,
+ * accessors and registered functions of a template context, and only holds
+ * its own root object and the variables set during the evaluation. Creating
+ * one is much cheaper than creating and populating a new
+ * {@link org.springframework.expression.spel.support.StandardEvaluationContext}.
+ *
+ * If the context is created with the {@link VariableSlots} of the expression
+ * to evaluate, the variables and functions referenced by the expression are
+ * held in the slots, which the bound nodes of the expression access by index.
+ */
+final class RootedEvaluationContext implements EvaluationContext {
+
+    private final EvaluationContext template;
+    private final TypedValue rootObject;
+    private final VariableSlots slots;
+    private final VariableSlots.Bindings bindings;
+    private Object[] slotValues;
+    private boolean slotValuesCopied;
+    private Map<String, Object> variables;
+
+    public RootedEvaluationContext(final EvaluationContext template,
+            final Object rootObject) {
+        this(template, rootObject, null);
+    }
+
+    public RootedEvaluationContext(final EvaluationContext template,
+            final Object rootObject, final VariableSlots slots) {
+        this.template = template;
+        this.rootObject = rootObject == null ? TypedValue.NULL : new TypedValue(rootObject);
+        this.slots = slots;
+        this.bindings = slots == null ? null : slots.bindingsFor(template);
+        this.slotValues = bindings == null ? null : bindings.getValues();
+    }
+
+    boolean hasSlots(final VariableSlots slots) {
+        return this.slots == slots;
+    }
+
+    Object getSlot(final int slot) {
+        return slotValues[slot];
+    }
+
+    void setSlot(final int slot, final Object value) {
+        if (!slotValuesCopied) {
+            slotValues = slotValues.clone();
+            slotValuesCopied = true;
+        }
+        slotValues[slot] = value;
+    }
+
+    VariableSlots.Function getFunction(final int slot) {
+        return bindings.getFunction(slot, slotValues[slot]);
+    }
+
+    @Override
+    public TypedValue getRootObject() {
+        return rootObject;
+    }
+
+    @Override
+    public List<ConstructorResolver> getConstructorResolvers() {
+        return template.getConstructorResolvers();
+    }
+
+    @Override
+    public List<MethodResolver> getMethodResolvers() {
+        return template.getMethodResolvers();
+    }
+
+    @Override
+    public List<PropertyAccessor> getPropertyAccessors() {
+        return template.getPropertyAccessors();
+    }
+
+    @Override
+    public TypeLocator getTypeLocator() {
+        return template.getTypeLocator();
+    }
+
+    @Override
+    public TypeConverter getTypeConverter() {
+        return template.getTypeConverter();
+    }
+
+    @Override
+    public TypeComparator getTypeComparator() {
+        return template.getTypeComparator();
+    }
+
+    @Override
+    public OperatorOverloader getOperatorOverloader() {
+        return template.getOperatorOverloader();
+    }
+
+    @Override
+    public BeanResolver getBeanResolver() {
+        return template.getBeanResolver();
+    }
+
+    @Override
+    public void setVariable(final String name, final Object value) {
+        int slot = slots == null ? -1 : slots.slotOf(name);
+        if (slot >= 0) {
+            setSlot(slot, value);
+            return;
+        }
+        if (variables == null) {
+            variables = new HashMap<String, Object>();
+        }
+        variables.put(name, value);
+    }
+
+    @Override
+    public Object lookupVariable(final String name) {
+        int slot = slots == null ? -1 : slots.slotOf(name);
+        if (slot >= 0) {
+            return slotValues[slot];
+        }
+        if (variables != null && variables.containsKey(name)) {
+            return variables.get(name);
+        }
+        return template.lookupVariable(name);
+    }
+
+}
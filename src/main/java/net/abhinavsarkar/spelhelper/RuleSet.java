@@ -0,0 +1,316 @@
+/* Copyright 2010 Abhinav Sarkar <abhinav@abhinavsarkar.net>
+ *
+ * This file is a part of SpelHelper library.
+ *
+ * SpelHelper library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License (GNU LGPL) as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * SpelHelper library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with SpelHelper library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.abhinavsarkar.spelhelper;
+
+import java.lang.reflect.Constructor;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.EvaluationException;
+import org.springframework.expression.Expression;
+import org.springframework.expression.TypedValue;
+import org.springframework.expression.spel.ExpressionState;
+import org.springframework.expression.spel.SpelNode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.ast.Assign;
+import org.springframework.expression.spel.ast.CompoundExpression;
+import org.springframework.expression.spel.ast.Elvis;
+import org.springframework.expression.spel.ast.MethodReference;
+import org.springframework.expression.spel.ast.Operator;
+import org.springframework.expression.spel.ast.OperatorNot;
+import org.springframework.expression.spel.ast.PropertyOrFieldReference;
+import org.springframework.expression.spel.ast.SpelNodeImpl;
+import org.springframework.expression.spel.ast.Ternary;
+import org.springframework.expression.spel.standard.SpelExpression;
+import org.springframework.util.Assert;
+
+/**
+ * A set of boolean SpEL rules which are evaluated together against a root
+ * object, evaluating the sub-expressions shared by the rules only once.
+ *
+ * When the rule set is created, the operators, the `!`, ternary and elvis
+ * expressions and the prefixes of the property and method chains of the rules
+ * are merged into a single graph in which equal sub-expressions are the same
+ * node. For example, the rules `customer.tier == 'gold'` and
+ * `customer.tier == 'gold' and amount > 100` share the nodes for
+ * `customer`, `customer.tier` and `customer.tier == 'gold'`. Every node is
+ * evaluated at most once for a root object, so the cost of evaluating the
+ * rules grows with the number of distinct sub-expressions and not with the
+ * number of rules.
+ *
+ * Example:
+ *
+ *     RuleSet rules = new RuleSet(new SpelHelper(),
+ *         "customer.tier == 'gold'", "customer.tier == 'gold' and amount > 100");
+ *     BitSet matched = rules.evalRules(event);
+ *
+ * The sub-expressions are assumed to be free of side effects, as a shared
+ * node is evaluated once even if it appears in many rules. The rules which
+ * assign variables are evaluated on their own, without sharing. The instances
+ * of this class are thread safe.
+ *
+ * @author Abhinav Sarkar _abhinav@abhinavsarkar.net_
+ */
+public final class RuleSet {
+
+    private static final String MEMO_KEY = RuleSet.class.getName();
+    private static final SpelParserConfiguration CONFIGURATION =
+        new SpelParserConfiguration(false, false);
+
+    private final SpelHelper spelHelper;
+    private final String[] rules;
+    private final Expression[] expressions;
+    private final boolean[] shared;
+    private final int nodeCount;
+
+    /**
+     * Creates a rule set of the boolean SpEL expressions `rules`.
+     * @param spelHelper    The SpelHelper to parse and evaluate the rules with.
+     * @param rules The SpEL expressions of the rules.
+     */
+    public RuleSet(final SpelHelper spelHelper, final String... rules) {
+        Assert.notNull(spelHelper, "spelHelper is null");
+        Assert.notNull(rules, "rules is null");
+        this.spelHelper = spelHelper;
+        this.rules = rules.clone();
+        this.expressions = new Expression[rules.length];
+        this.shared = new boolean[rules.length];
+
+        Builder builder = new Builder();
+        for (int i = 0; i < rules.length; i++) {
+            Assert.notNull(rules[i], "Rule is null at index: " + i);
+            Expression expression = spelHelper.parseExpression(rules[i]);
+            if (expression instanceof SpelExpression
+                    && !assigns(((SpelExpression) expression).getAST())) {
+                SpelNodeImpl root = (SpelNodeImpl) ((SpelExpression) expression).getAST();
+                builder.source = rules[i];
+                expression = new SpelExpression(rules[i], builder.share(root), CONFIGURATION);
+                shared[i] = true;
+            }
+            expressions[i] = expression;
+        }
+        this.nodeCount = builder.nodes.size();
+    }
+
+    /**
+     * Returns the number of rules in this rule set.
+     * @return  The number of rules.
+     */
+    public int size() {
+        return rules.length;
+    }
+
+    /**
+     * Returns the SpEL expression of the rule at index `index`.
+     * @param index The index of the rule.
+     * @return  The expression string of the rule.
+     */
+    public String getRule(final int index) {
+        return rules[index];
+    }
+
+    /**
+     * Returns the number of distinct sub-expressions shared among the rules.
+     * @return  The number of distinct sub-expressions.
+     */
+    public int getSubexpressionCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Evaluates all the rules in the context of root element `rootElement`.
+     * A rule matches if it evaluates to true.
+     * @param rootElement   The root element in context of which the rules
+     * are to be evaluated.
+     * @return  A {@link BitSet} in which the bits at the indices of the
+     * matching rules are set.
+     */
+    public BitSet evalRules(final Object rootElement) {
+        EvaluationContext template = spelHelper.getContextTemplate();
+        EvaluationContext context = new RootedEvaluationContext(template, rootElement);
+        context.setVariable(MEMO_KEY, new TypedValue[nodeCount]);
+        BitSet matched = new BitSet(rules.length);
+        for (int i = 0; i < rules.length; i++) {
+            Boolean result = shared[i]
+                ? spelHelper.evalExpression(expressions[i], context, Boolean.class)
+                : spelHelper.evalExpression(expressions[i],
+                        new RootedEvaluationContext(template, rootElement,
+                                VariableSlots.of(expressions[i])), Boolean.class);
+            if (Boolean.TRUE.equals(result)) {
+                matched.set(i);
+            }
+        }
+        return matched;
+    }
+
+    private static boolean assigns(final SpelNode node) {
+        if (node instanceof Assign) {
+            return true;
+        }
+        for (int i = 0; i < node.getChildCount(); i++) {
+            if (assigns(node.getChild(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Builder {
+        private final Map<String, SharedNode> nodes = new HashMap<String, SharedNode>();
+        private String source;
+
+        public SharedNode share(final SpelNodeImpl node) {
+            String key = key(node);
+            SharedNode sharedNode = nodes.get(key);
+            if (sharedNode == null) {
+                SpelNodeImpl definition = rebuild(node);
+                sharedNode = new SharedNode(nodes.size(), definition);
+                nodes.put(key, sharedNode);
+            }
+            return sharedNode;
+        }
+
+        /**
+         * Rebuilds the nodes which evaluate their children in the scope of the
+         * root object with shared children. The other nodes are kept as they are.
+         */
+        private SpelNodeImpl rebuild(final SpelNodeImpl node) {
+            int count = node.getChildCount();
+            int pos = (node.getStartPosition() << 16) + node.getEndPosition();
+            if (node instanceof CompoundExpression && count > 1) {
+                SpelNodeImpl prefix = (SpelNodeImpl) node.getChild(0);
+                if (count > 2) {
+                    SpelNodeImpl[] steps = new SpelNodeImpl[count - 1];
+                    for (int i = 0; i < steps.length; i++) {
+                        steps[i] = (SpelNodeImpl) node.getChild(i);
+                    }
+                    prefix = new CompoundExpression(pos, steps);
+                }
+                return new CompoundExpression(pos, share(prefix),
+                        (SpelNodeImpl) node.getChild(count - 1));
+            }
+            if (node instanceof Operator || node instanceof OperatorNot
+                    || node instanceof Ternary || node instanceof Elvis) {
+                SpelNodeImpl[] children = new SpelNodeImpl[count];
+                for (int i = 0; i < count; i++) {
+                    children[i] = share((SpelNodeImpl) node.getChild(i));
+                }
+                SpelNodeImpl rebuilt = construct(node.getClass(), pos, children);
+                if (rebuilt != null) {
+                    return rebuilt;
+                }
+            }
+            return node;
+        }
+
+        private static SpelNodeImpl construct(final Class<?> nodeClass,
+                final int pos, final SpelNodeImpl[] children) {
+            try {
+                if (children.length == 1) {
+                    for (Constructor<?> constructor : nodeClass.getConstructors()) {
+                        Class<?>[] types = constructor.getParameterTypes();
+                        if (types.length == 2 && types[1] == SpelNodeImpl.class) {
+                            return (SpelNodeImpl) constructor.newInstance(pos, children[0]);
+                        }
+                    }
+                }
+                return (SpelNodeImpl) nodeClass.getConstructor(
+                        int.class, SpelNodeImpl[].class).newInstance(pos, children);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        /**
+         * Returns a key which is equal for two nodes only if they are of the
+         * same class, have the same text and null safety, and have children
+         * with equal keys. The text alone is ambiguous for nested ternary and
+         * elvis expressions, and does not show the null safe navigation.
+         */
+        private String key(final SpelNode node) {
+            StringBuilder key = new StringBuilder();
+            key.append(node.getClass().getSimpleName());
+            if (isNullSafe(node)) {
+                key.append('?');
+            }
+            key.append('{').append(node.toStringAST()).append('}');
+            key.append('(');
+            for (int i = 0; i < node.getChildCount(); i++) {
+                key.append(key(node.getChild(i))).append(',');
+            }
+            return key.append(')').toString();
+        }
+
+        /**
+         * Method references do not expose their null safety, so it is read from
+         * the source of the rule preceding the method name.
+         */
+        private boolean isNullSafe(final SpelNode node) {
+            if (node instanceof PropertyOrFieldReference) {
+                return ((PropertyOrFieldReference) node).isNullSafe();
+            }
+            if (node instanceof MethodReference) {
+                int i = node.getStartPosition() - 1;
+                while (i > 0 && Character.isWhitespace(source.charAt(i))) {
+                    i--;
+                }
+                return i > 0 && source.charAt(i) == '.' && source.charAt(i - 1) == '?';
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A node shared among the rules. It evaluates its definition once per
+     * root object and keeps the value in the evaluation context.
+     */
+    private static final class SharedNode extends SpelNodeImpl {
+        private final int id;
+        private final SpelNodeImpl definition;
+
+        public SharedNode(final int id, final SpelNodeImpl definition) {
+            super((definition.getStartPosition() << 16) + definition.getEndPosition());
+            this.id = id;
+            this.definition = definition;
+        }
+
+        @Override
+        public TypedValue getValueInternal(final ExpressionState state)
+                throws EvaluationException {
+            Object memo = state.getEvaluationContext().lookupVariable(MEMO_KEY);
+            if (!(memo instanceof TypedValue[])) {
+                return definition.getValueInternal(state);
+            }
+            TypedValue[] values = (TypedValue[]) memo;
+            TypedValue value = values[id];
+            if (value == null) {
+                value = definition.getValueInternal(state);
+                values[id] = value;
+            }
+            return value;
+        }
+
+        @Override
+        public String toStringAST() {
+            return definition.toStringAST();
+        }
+    }
+
+}
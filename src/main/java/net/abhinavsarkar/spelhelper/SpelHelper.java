@@ -29,11 +29,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.springframework.core.convert.TypeDescriptor;
+import org.springframework.expression.AccessException;
 import org.springframework.expression.ConstructorResolver;
 import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.Expression;
 import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.MethodExecutor;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.util.Assert;
@@ -115,6 +119,22 @@ import org.springframework.util.Assert;
  * the SpEL expressions evaluated through SpelHelper. See {@link ExtensionFunctions}
  * and {@link ImplicitMethods} for further details.
  *
+ * **Layers**
+ *
+ * A SpelHelper can be created as a layer over a parent SpelHelper with
+ * {@link SpelHelper#SpelHelper(SpelHelper)}. The functions, implicit methods
+ * and constructors registered with the parent are available in the layer,
+ * and the ones registered with the layer take precedence over them. A layer
+ * holds only its own registrations, so many layers can share a large parent.
+ * The layers with no registrations of their own share the resolution caches
+ * of their parents. The automatically registered functions and methods are
+ * held in a frozen layer shared by all the instances.
+ *
+ * Example:
+ *
+ *     SpelHelper shared = new SpelHelper().registerFunctionsFromClass(Common.class).freeze();
+ *     SpelHelper tenant = new SpelHelper(shared).registerFunctionsFromClass(Tenant.class);
+ *
  * [1]: http://static.springsource.org/spring/docs/3.0.x/spring-framework-reference/html/expressions.html
  * [2]: http://static.springsource.org/spring/docs/3.0.x/spring-framework-reference/html/expressions.html#expressions-ref-functions
  * [3]: http://static.springsource.org/spring/docs/3.0.x/spring-framework-reference/html/expressions.html#d0e11927
@@ -123,24 +143,85 @@ import org.springframework.util.Assert;
  */
 public final class SpelHelper {
 
-    static final String CONTEXT_LOOKUP_KEY = SpelHelper.class.getName();
-
-    private final ExpressionParser PARSER = new SpelExpressionParser();
+    private static final ExpressionParser PARSER = new SpelExpressionParser();
     private static final ThreadLocal<EvaluationContext> CURRENT_CONTEXT =
         new ThreadLocal<EvaluationContext>();
+    private static final SpelHelper DEFAULTS = new SpelHelper(null, true);
+    /**
+     * The number of the numeric expressions kept compiled. The cache is
+     * cleared when it is full.
+     */
+    private static final int NUMERIC_EXPRESSION_CACHE_SIZE = 256;
 
+    private final SpelHelper parent;
     private final Set<Method> registeredFunctions = new HashSet<Method>();
-    private final Map<String,Method> registeredMethods =
-        new ConcurrentHashMap<String, Method>();
+    private final ImplicitMethodTable registeredMethods;
     private final Map<String,Constructor<?>> registeredConstructors =
         new ConcurrentHashMap<String, Constructor<?>>();
+    private final ConcurrentHashMap<String,NumericExpression> numericExpressions =
+        new ConcurrentHashMap<String, NumericExpression>();
+    private final AtomicInteger modCount = new AtomicInteger();
+    private volatile ContextTemplate contextTemplate;
+    private volatile boolean frozen;
 
     /**
      * Creates an instance of SpelHelper.
      */
     public SpelHelper() {
-        registerFunctionsFromClass(ExtensionFunctions.class);
-        registerImplicitMethodsFromClass(ImplicitMethods.class);
+        this(DEFAULTS);
+    }
+
+    /**
+     * Creates an instance of SpelHelper as a layer over the SpelHelper
+     * `parent`. The registrations of the parent, including the ones made
+     * later, are available in the new instance.
+     * @param parent    The parent SpelHelper.
+     */
+    public SpelHelper(final SpelHelper parent) {
+        this(parent, false);
+        Assert.notNull(parent, "parent is null");
+    }
+
+    private SpelHelper(final SpelHelper parent, final boolean defaults) {
+        this.parent = parent;
+        this.registeredMethods = new ImplicitMethodTable(
+                parent == null ? null : parent.registeredMethods);
+        if (defaults) {
+            registerFunctionsFromClass(ExtensionFunctions.class);
+            registerImplicitMethodsFromClass(ImplicitMethods.class);
+            freeze();
+        }
+    }
+
+    /**
+     * Freezes this instance so that no more functions, implicit methods or
+     * constructors can be registered with it. A frozen instance can be safely
+     * shared as the parent of many layers.
+     * @return      The current instance of SpelHelper. This is for chaining
+     * the methods calls.
+     */
+    public SpelHelper freeze() {
+        frozen = true;
+        return this;
+    }
+
+    private void registered() {
+        modCount.incrementAndGet();
+        contextTemplate = null;
+    }
+
+    /**
+     * Returns a number which changes whenever something is registered with
+     * this instance or with any of its ancestors.
+     */
+    int generation() {
+        int generation = modCount.get();
+        return parent == null ? generation : generation + parent.generation();
+    }
+
+    private boolean hasOwnRegistrations() {
+        return !registeredFunctions.isEmpty() || !registeredMethods.isEmpty()
+            || !registeredConstructors.isEmpty();
     }
 
     /**
@@ -148,18 +229,20 @@ public final class SpelHelper {
      * methods for the class of the first parameter of the methods.
      *
      * Only registers the public static methods with non void return type and at
-     * least one argument.
+     * least one argument. Overloaded methods are all registered and the most
+     * specific one for the receiver and the arguments is chosen when the
+     * implicit method is invoked.
      * @see ImplicitMethods
      * @param clazz The class to register the methods from.
      * @return      The current instance of SpelHelper. This is for chaining
      * the methods calls.
      */
     public SpelHelper registerImplicitMethodsFromClass(final Class<?> clazz) {
+        Assert.state(!frozen, "SpelHelper is frozen");
         for (Method method : filterMethods(clazz)) {
-            registeredMethods.put(String.format(
-                    "%s.%s", method.getParameterTypes()[0].getName(), method.getName()),
-                    method);
+            registeredMethods.register(method);
         }
+        registered();
         return this;
     }
 
@@ -175,7 +258,9 @@ public final class SpelHelper {
      * the methods calls.
      */
     public SpelHelper registerFunctionsFromClass(final Class<?> clazz) {
+        Assert.state(!frozen, "SpelHelper is frozen");
         registeredFunctions.addAll(filterFunctions(clazz));
+        registered();
         return this;
     }
 
@@ -187,12 +272,14 @@ public final class SpelHelper {
      * the methods calls.
      */
     public SpelHelper registerConstructorsFromClass(final Class<?> clazz) {
+        Assert.state(!frozen, "SpelHelper is frozen");
         for (Constructor<?> constructor : asList(clazz.getConstructors())) {
             registeredConstructors.put(
                     constructor.getDeclaringClass().getSimpleName()
                         + Arrays.toString(constructor.getParameterTypes()),
                     constructor);
         }
+        registered();
         return this;
     }
 
@@ -211,11 +298,94 @@ public final class SpelHelper {
      */
     public <T> T evalExpression(final String expressionString,
             final Object rootElement, final Class<T> desiredType) {
-        EvaluationContext evaluationContext = getEvaluationContext(rootElement);
+        return evalExpression(parseExpression(expressionString), rootElement, desiredType);
+    }
+
+    /**
+     * Evaluates an already parsed SpEL expression `expression` in the context
+     * of root element `rootElement` and gives back a result of type
+     * `desiredType`.
+     * @param <T>   The type of the result desired.
+     * @param expression  The parsed SpEL expression to evaluate.
+     * @param rootElement   The root element in context of which the expression
+     * is to be evaluated.
+     * @param desiredType   The class of the result desired.
+     * @return  The result of the evaluation of the expression.
+     * @see SpelHelper#parseExpression(String)
+     * @see Expression#getValue(EvaluationContext, Class)
+     */
+    public <T> T evalExpression(final Expression expression,
+            final Object rootElement, final Class<T> desiredType) {
+        return evalExpression(expression, new RootedEvaluationContext(
+                getContextTemplate(), rootElement, VariableSlots.of(expression)), desiredType);
+    }
+
+    /**
+     * Evaluates a SpEL expression `expressionString` in the context
+     * of root element `rootElement` within the budget `budget`, and gives back
+     * a result of type `desiredType`. The expression is parsed on every call,
+     * so an expression evaluated many times should be parsed once and evaluated
+     * with {@link #evalExpression(Expression, Object, Class, EvaluationBudget)}.
+     * @param <T>   The type of the result desired.
+     * @param expressionString  The SpEL expression to evaluate.
+     * @param rootElement   The root element in context of which the expression
+     * is to be evaluated.
+     * @param desiredType   The class of the result desired.
+     * @param budget    The limits on the work done by the evaluation.
+     * @return  The result of the evaluation of the expression.
+     * @throws EvaluationBudgetExceededException if the evaluation exceeds
+     * the budget.
+     * @see EvaluationBudget
+     */
+    public <T> T evalExpression(final String expressionString,
+            final Object rootElement, final Class<T> desiredType,
+            final EvaluationBudget budget) {
+        return evalExpressions(new String[] { expressionString },
+                rootElement, desiredType, budget);
+    }
+
+    /**
+     * Evaluates an already parsed SpEL expression `expression` in the context
+     * of root element `rootElement` within the budget `budget`, and gives back
+     * a result of type `desiredType`. The budget is kept in the context of the
+     * evaluation. The projections and selections of the expression are
+     * instrumented to count their elements the first time it is evaluated
+     * within a budget, and they count nothing in the unbudgeted evaluations.
+     * @param <T>   The type of the result desired.
+     * @param expression  The parsed SpEL expression to evaluate.
+     * @param rootElement   The root element in context of which the expression
+     * is to be evaluated.
+     * @param desiredType   The class of the result desired.
+     * @param budget    The limits on the work done by the evaluation.
+     * @return  The result of the evaluation of the expression.
+     * @throws EvaluationBudgetExceededException if the evaluation exceeds
+     * the budget.
+     * @see SpelHelper#parseExpression(String)
+     * @see EvaluationBudget
+     */
+    public <T> T evalExpression(final Expression expression,
+            final Object rootElement, final Class<T> desiredType,
+            final EvaluationBudget budget) {
+        Assert.notNull(budget, "budget is null");
+        EvaluationContext evaluationContext = new BudgetedEvaluationContext(
+                new RootedEvaluationContext(getContextTemplate(), rootElement), budget);
+        try {
+            return evalExpression(BudgetedEvaluationContext.instrument(expression),
+                    evaluationContext, desiredType);
+        } catch (RuntimeException e) {
+            throw BudgetedEvaluationContext.unwrap(e);
+        }
+    }
+
+    <T> T evalExpression(final Expression expression,
+            final EvaluationContext evaluationContext, final Class<T> desiredType) {
+        EvaluationContext previousContext = CURRENT_CONTEXT.get();
         CURRENT_CONTEXT.set(evaluationContext);
-        T value = evalExpression(expressionString, evaluationContext, desiredType);
-        CURRENT_CONTEXT.set(null);
-        return value;
+        try {
+            return expression.getValue(evaluationContext, desiredType);
+        } finally {
+            CURRENT_CONTEXT.set(previousContext);
+        }
     }
 
     /**
@@ -232,10 +402,137 @@ public final class SpelHelper {
      */
     public <T> T evalExpression(final String expressionString,
             final EvaluationContext evaluationContext, final Class<T> desiredType) {
-        return PARSER.parseExpression(expressionString)
+        return parseExpression(expressionString)
                     .getValue(evaluationContext, desiredType);
     }
 
+    /**
+     * Parses a SpEL expression `expressionString` so that it can be
+     * evaluated multiple times without being parsed again. The variables and
+     * functions referenced by the expression are bound to slots, so that
+     * {@link SpelHelper#evalExpression(Expression, Object, Class)} accesses
+     * them without looking up their names.
+     * @param expressionString  The SpEL expression to parse.
+     * @return  The parsed expression.
+     * @see SpelHelper#evalExpression(Expression, Object, Class)
+     */
+    public Expression parseExpression(final String expressionString) {
+        return VariableSlots.bind(PARSER.parseExpression(expressionString));
+    }
+
+    /**
+     * Evaluates a numeric SpEL expression `expressionString` in the context
+     * of root element `rootElement` and gives back a `long` result without
+     * boxing the intermediate values. The compiled expressions of the
+     * expression strings are cached, but a hot caller should keep the
+     * expression compiled by {@link #compileNumericExpression(String)}.
+     * @param expressionString  The SpEL expression to evaluate.
+     * @param rootElement   The root element in context of which the expression
+     * is to be evaluated.
+     * @return  The result of the evaluation of the expression.
+     * @see NumericExpression#evalLong(Object)
+     */
+    public long evalLong(final String expressionString, final Object rootElement) {
+        return getNumericExpression(expressionString).evalLong(rootElement);
+    }
+
+    /**
+     * Evaluates a numeric SpEL expression `expressionString` in the context
+     * of root element `rootElement` and gives back a `double` result without
+     * boxing the intermediate values. The compiled expressions of the
+     * expression strings are cached, but a hot caller should keep the
+     * expression compiled by {@link #compileNumericExpression(String)}.
+     * @param expressionString  The SpEL expression to evaluate.
+     * @param rootElement   The root element in context of which the expression
+     * is to be evaluated.
+     * @return  The result of the evaluation of the expression.
+     * @see NumericExpression#evalDouble(Object)
+     */
+    public double evalDouble(final String expressionString, final Object rootElement) {
+        return getNumericExpression(expressionString).evalDouble(rootElement);
+    }
+
+    /**
+     * Evaluates a boolean SpEL expression `expressionString` in the context
+     * of root element `rootElement` and gives back a `boolean` result without
+     * boxing the intermediate values. The compiled expressions of the
+     * expression strings are cached, but a hot caller should keep the
+     * expression compiled by {@link #compileNumericExpression(String)}.
+     * @param expressionString  The SpEL expression to evaluate.
+     * @param rootElement   The root element in context of which the expression
+     * is to be evaluated.
+     * @return  The result of the evaluation of the expression.
+     * @see NumericExpression#evalBoolean(Object)
+     */
+    public boolean evalBoolean(final String expressionString, final Object rootElement) {
+        return getNumericExpression(expressionString).evalBoolean(rootElement);
+    }
+
+    /**
+     * Compiles a SpEL expression `expressionString` to be evaluated through
+     * the primitive specialized path.
+     * @param expressionString  The SpEL expression to compile.
+     * @return  The compiled expression.
+     * @see NumericExpression
+     */
+    public NumericExpression compileNumericExpression(final String expressionString) {
+        return new NumericExpression(this, parseExpression(expressionString));
+    }
+
+    /**
+     * Compiles a SpEL expression `expressionString` to be evaluated over
+     * batches of rows held as primitive columns.
+     * @param expressionString  The SpEL expression to compile.
+     * @return  The compiled expression.
+     * @see ColumnarExpression
+     */
+    public ColumnarExpression compileColumnarExpression(final String expressionString) {
+        return new ColumnarExpression(this, parseExpression(expressionString));
+    }
+
+    /**
+     * Compiles a boolean SpEL expression `expressionString` into a predicate.
+     * The expression is parsed, and the evaluation context is prepared, only
+     * once. The predicate can be used from multiple threads.
+     * @param <T>   The type of the objects to test.
+     * @param expressionString  The SpEL expression to compile.
+     * @return  The compiled predicate.
+     * @see CompiledPredicate
+     */
+    public <T> CompiledPredicate<T> compilePredicate(final String expressionString) {
+        return new CompiledPredicate<T>(compileNumericExpression(expressionString));
+    }
+
+    /**
+     * Compiles a numeric SpEL expression `expressionString` into a function
+     * giving back `double` values. The expression is parsed, and the evaluation
+     * context is prepared, only once. The function can be used from multiple
+     * threads.
+     * @param <T>   The type of the objects to apply the function to.
+     * @param expressionString  The SpEL expression to compile.
+     * @return  The compiled function.
+     * @see CompiledDoubleFunction
+     */
+    public <T> CompiledDoubleFunction<T> compileDoubleFunction(
+            final String expressionString) {
+        return new CompiledDoubleFunction<T>(compileNumericExpression(expressionString));
+    }
+
+    private NumericExpression getNumericExpression(final String expressionString) {
+        NumericExpression expression = numericExpressions.get(expressionString);
+        if (expression == null) {
+            if (numericExpressions.size() >= NUMERIC_EXPRESSION_CACHE_SIZE) {
+                numericExpressions.clear();
+            }
+            expression = compileNumericExpression(expressionString);
+            NumericExpression cached = numericExpressions.putIfAbsent(expressionString, expression);
+            if (cached != null) {
+                expression = cached;
+            }
+        }
+        return expression;
+    }
+
     /**
      * Evaluates multiple SpEL expressions and returns the result of the last
      * expression.
@@ -250,8 +547,8 @@ public final class SpelHelper {
      */
     public <T> T evalExpressions(final String[] expressionStrings,
             final Object rootElement, final Class<T> desiredType) {
-        return evalExpressions(
-                expressionStrings, getEvaluationContext(rootElement), desiredType);
+        return evalExpressions(expressionStrings,
+                new RootedEvaluationContext(getContextTemplate(), rootElement), desiredType);
     }
 
     /**
@@ -277,28 +574,153 @@ public final class SpelHelper {
                 evaluationContext, desiredType);
     }
 
-    private EvaluationContext getEvaluationContext(final Object rootObject) {
+    /**
+     * Evaluates multiple SpEL expressions within the budget `budget` and
+     * returns the result of the last expression. The budget is shared by all
+     * the expressions, which are parsed on every call.
+     * @param <T>   The type of the result desired.
+     * @param expressionStrings  The SpEL expressions to evaluate.
+     * @param rootElement   The root element in context of which the expressions
+     * are to be evaluated.
+     * @param desiredType   The class of the result desired.
+     * @param budget    The limits on the work done by the evaluation.
+     * @return  The result of the evaluation of the last expression.
+     * @throws EvaluationBudgetExceededException if the evaluation exceeds
+     * the budget.
+     * @see EvaluationBudget
+     */
+    public <T> T evalExpressions(final String[] expressionStrings,
+            final Object rootElement, final Class<T> desiredType,
+            final EvaluationBudget budget) {
+        Assert.notNull(budget, "budget is null");
+        int length = expressionStrings.length;
+        Assert.isTrue(length > 0,
+                "expressionStrings should have length more than 0");
+        EvaluationContext evaluationContext = new BudgetedEvaluationContext(
+                new RootedEvaluationContext(getContextTemplate(), rootElement), budget);
+        try {
+            for (int i = 0; i < length - 1; i++) {
+                evalExpression(BudgetedEvaluationContext.instrument(
+                        parseExpression(expressionStrings[i])),
+                        evaluationContext, Object.class);
+            }
+            return evalExpression(BudgetedEvaluationContext.instrument(
+                    parseExpression(expressionStrings[length - 1])),
+                    evaluationContext, desiredType);
+        } catch (RuntimeException e) {
+            throw BudgetedEvaluationContext.unwrap(e);
+        }
+    }
+
+    StandardEvaluationContext getEvaluationContext(final Object rootObject) {
         StandardEvaluationContext newContext = new StandardEvaluationContext(rootObject);
-        newContext.getMethodResolvers().add(new ImplicitMethodResolver());
-        newContext.getPropertyAccessors().add(new ImplicitPropertyAccessor());
+        newContext.getMethodResolvers().add(new ImplicitMethodResolver(this));
+        newContext.getPropertyAccessors().add(new ImplicitPropertyAccessor(this));
         newContext.setConstructorResolvers(
-                asList((ConstructorResolver) new ImplicitConstructorResolver()));
+                asList((ConstructorResolver) new ImplicitConstructorResolver(this)));
+        setFunctions(newContext);
+        return newContext;
+    }
+
+    private void setFunctions(final EvaluationContext context) {
+        if (parent != null) {
+            parent.setFunctions(context);
+        }
         for (Method method : registeredFunctions) {
-            newContext.setVariable(method.getName(), method);
+            context.setVariable(method.getName(), method);
         }
-        newContext.setVariable(CONTEXT_LOOKUP_KEY, this);
-        return newContext;
     }
 
     /**
-     * Looks up an implicit method registered with this instance.
+     * Returns a prepared context shared by the evaluations, which changes when
+     * something is registered with this instance or with any of its ancestors.
+     * A layer with no registrations of its own shares the template of its parent.
+     */
+    EvaluationContext getContextTemplate() {
+        if (parent != null && !hasOwnRegistrations()) {
+            return parent.getContextTemplate();
+        }
+        int generation = generation();
+        ContextTemplate template = contextTemplate;
+        if (template == null || template.generation != generation) {
+            StandardEvaluationContext newTemplate = getEvaluationContext(null);
+            newTemplate.getPropertyAccessors();
+            newTemplate.getMethodResolvers();
+            newTemplate.getConstructorResolvers();
+            newTemplate.getTypeLocator();
+            newTemplate.getTypeConverter();
+            template = new ContextTemplate(newTemplate, generation);
+            contextTemplate = template;
+        }
+        return template.context;
+    }
+
+    /**
+     * Looks up an implicit method registered with this instance. If the
+     * method is overloaded, the first registered overload is returned. The
+     * methods registered with this instance are looked up before the ones
+     * inherited from its parent.
      * @param lookup    key to lookup which should be of form:
      * `method.getParameterTypes()[0].getName() + "." + method.getName()`
      * @return  The registered method if found, else null.
+     * @see SpelHelper#lookupImplicitMethods(Class, String)
      */
     public Method lookupImplicitMethod(final String lookup) {
         Assert.notNull(lookup);
-        return registeredMethods.get(lookup);
+        int index = lookup.lastIndexOf('.');
+        if (index < 0) {
+            return null;
+        }
+        return registeredMethods.lookup(
+                lookup.substring(0, index), lookup.substring(index + 1));
+    }
+
+    /**
+     * Looks up all the overloads of an implicit method registered with this
+     * instance for the class `receiverType`.
+     * @param receiverType  The class the implicit method is registered for,
+     * that is, the type of the first parameter of the method.
+     * @param name  The name of the implicit method.
+     * @return  An unmodifiable list of the registered overloads in the order
+     * of registration, the ones registered with this instance coming before
+     * the ones inherited from its parent. Empty if none are found.
+     */
+    public List<Method> lookupImplicitMethods(final Class<?> receiverType,
+            final String name) {
+        Assert.notNull(receiverType);
+        Assert.notNull(name);
+        return registeredMethods.lookup(receiverType, name);
+    }
+
+    List<Method> lookupImplicitMethods(final String name) {
+        return registeredMethods.lookupAll(name);
+    }
+
+    MethodExecutor resolveImplicitProperty(final EvaluationContext context,
+            final Object target, final String name) throws AccessException {
+        return registeredMethods.resolveProperty(context, target, name);
+    }
+
+    long getImplicitPropertyCacheHits() {
+        return registeredMethods.getPropertyCacheHits();
+    }
+
+    long getImplicitPropertyCacheMisses() {
+        return registeredMethods.getPropertyCacheMisses();
+    }
+
+    long getImplicitMethodCacheHits() {
+        return registeredMethods.getCacheHits();
+    }
+
+    long getImplicitMethodCacheMisses() {
+        return registeredMethods.getCacheMisses();
+    }
+
+    MethodExecutor resolveImplicitMethod(final EvaluationContext context,
+            final Class<?> receiverType, final String name,
+            final List<TypeDescriptor> argumentTypes) {
+        return registeredMethods.resolve(context, receiverType, name, argumentTypes);
     }
 
     /**
@@ -310,7 +732,24 @@ public final class SpelHelper {
      */
     public Constructor<?> lookupImplicitConstructor(final String lookup) {
         Assert.notNull(lookup);
-        return registeredConstructors.get(lookup);
+        Constructor<?> constructor = registeredConstructors.get(lookup);
+        if (constructor == null && parent != null) {
+            return parent.lookupImplicitConstructor(lookup);
+        }
+        return constructor;
+    }
+
+    Method lookupFunction(final String name) {
+        Method function = null;
+        for (Method method : registeredFunctions) {
+            if (method.getName().equals(name)) {
+                function = method;
+            }
+        }
+        if (function == null && parent != null) {
+            return parent.lookupFunction(name);
+        }
+        return function;
     }
 
     /**
@@ -346,4 +785,14 @@ public final class SpelHelper {
         return allowedMethods;
     }
 
+    private static final class ContextTemplate {
+        private final EvaluationContext context;
+        private final int generation;
+
+        public ContextTemplate(final EvaluationContext context, final int generation) {
+            this.context = context;
+            this.generation = generation;
+        }
+    }
+
 }
@@ -0,0 +1,336 @@
+/* Copyright 2010 Abhinav Sarkar <abhinav@abhinavsarkar.net>
+ *
+ * This file is a part of SpelHelper library.
+ *
+ * SpelHelper library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License (GNU LGPL) as
+ * published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * SpelHelper library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with SpelHelper library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.abhinavsarkar.spelhelper;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.core.convert.TypeDescriptor;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.EvaluationException;
+import org.springframework.expression.Expression;
+import org.springframework.expression.TypedValue;
+import org.springframework.expression.spel.ExpressionState;
+import org.springframework.expression.spel.SpelEvaluationException;
+import org.springframework.expression.spel.SpelMessage;
+import org.springframework.expression.spel.SpelNode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.ast.FunctionReference;
+import org.springframework.expression.spel.ast.SpelNodeImpl;
+import org.springframework.expression.spel.ast.VariableReference;
+import org.springframework.expression.spel.standard.SpelExpression;
+import org.springframework.expression.spel.support.ReflectionHelper;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * The slots of the variables and functions referenced by a parsed expression.
+ *
+ * When an expression is parsed by {@link SpelHelper}, every distinct `#name`
+ * it references is given a fixed slot, and its variable and function reference
+ * nodes are replaced by nodes which hold their slot indices. A
+ * {@link RootedEvaluationContext} created with the slots keeps their values in
+ * an array, so these nodes read, assign and call the values by index instead
+ * of looking the names up. The slots of the registered functions are bound to
+ * their methods once per context template, along with the descriptors of
+ * their return types which SpEL otherwise creates on every call.
+ *
+ * In any other context the nodes look the names up like the nodes they
+ * replace, so a bound expression can be evaluated like any SpEL expression.
+ */
+final class VariableSlots {
+
+    private static final SpelParserConfiguration CONFIGURATION =
+        new SpelParserConfiguration(false, false);
+
+    private final String[] names;
+    private final Map<String, Integer> slots;
+    private volatile Bindings bindings;
+
+    private VariableSlots(final List<String> names) {
+        this.names = names.toArray(new String[names.size()]);
+        this.slots = new HashMap<String, Integer>();
+        for (int i = 0; i < this.names.length; i++) {
+            slots.put(this.names[i], i);
+        }
+    }
+
+    /**
+     * Binds the variable and function references of the parsed expression
+     * `expression` to slots.
+     * @return  The bound expression, or `expression` itself if it references
+     * no variables or functions, or if its nodes cannot be replaced.
+     */
+    public static Expression bind(final Expression expression) {
+        if (!(expression instanceof SpelExpression) || !NodeChildren.isAccessible()) {
+            return expression;
+        }
+        SpelNodeImpl ast = (SpelNodeImpl) ((SpelExpression) expression).getAST();
+        List<String> names = new ArrayList<String>();
+        collectNames(ast, names);
+        if (names.isEmpty()) {
+            return expression;
+        }
+        VariableSlots slots = new VariableSlots(names);
+        return new SlottedExpression(expression.getExpressionString(), slots.bind(ast), slots);
+    }
+
+    /**
+     * Returns the slots of the expression `expression`, null if it is not
+     * bound to slots.
+     */
+    public static VariableSlots of(final Expression expression) {
+        return expression instanceof SlottedExpression
+            ? ((SlottedExpression) expression).slots : null;
+    }
+
+    private static void collectNames(final SpelNode node, final List<String> names) {
+        String name = nameOf(node);
+        if (name != null && !names.contains(name)) {
+            names.add(name);
+        }
+        for (int i = 0; i < node.getChildCount(); i++) {
+            collectNames(node.getChild(i), names);
+        }
+    }
+
+    private static String nameOf(final SpelNode node) {
+        if (node instanceof FunctionReference) {
+            String ast = node.toStringAST();
+            return ast.substring(1, ast.indexOf('('));
+        } else if (node instanceof VariableReference) {
+            String name = node.toStringAST().substring(1);
+            return "this".equals(name) || "root".equals(name) ? null : name;
+        }
+        return null;
+    }
+
+    private SpelNodeImpl bind(final SpelNodeImpl node) {
+        SpelNodeImpl[] children = NodeChildren.of(node);
+        for (int i = 0; i < children.length; i++) {
+            children[i] = bind(children[i]);
+        }
+        String name = nameOf(node);
+        if (name == null) {
+            return node;
+        }
+        int pos = (node.getStartPosition() << 16) + node.getEndPosition();
+        return node instanceof FunctionReference
+            ? new SlotFunctionReference(name, pos, this, slotOf(name), children)
+            : new SlotVariableReference(name, pos, this, slotOf(name));
+    }
+
+    /**
+     * Returns the slot of the name `name`, -1 if the expression does not
+     * reference it. This is used only by the lookups by name.
+     */
+    public int slotOf(final String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Returns the values of the slots in the context template `template`.
+     */
+    public Bindings bindingsFor(final EvaluationContext template) {
+        Bindings current = bindings;
+        if (current == null || current.template != template) {
+            current = new Bindings(template, names);
+            bindings = current;
+        }
+        return current;
+    }
+
+    /**
+     * Returns the context of the evaluation if it holds these slots, else null.
+     */
+    private RootedEvaluationContext contextOf(final ExpressionState state) {
+        EvaluationContext context = state.getEvaluationContext();
+        return context instanceof RootedEvaluationContext
+                && ((RootedEvaluationContext) context).hasSlots(this)
+            ? (RootedEvaluationContext) context : null;
+    }
+
+    /**
+     * The values of the slots in a context template, and the registered
+     * functions among them.
+     */
+    static final class Bindings {
+        private final EvaluationContext template;
+        private final Object[] values;
+        private final Function[] functions;
+
+        private Bindings(final EvaluationContext template, final String[] names) {
+            this.template = template;
+            this.values = new Object[names.length];
+            this.functions = new Function[names.length];
+            for (int i = 0; i < names.length; i++) {
+                values[i] = template.lookupVariable(names[i]);
+                if (values[i] instanceof Method
+                        && Modifier.isStatic(((Method) values[i]).getModifiers())) {
+                    functions[i] = new Function((Method) values[i]);
+                }
+            }
+        }
+
+        public Object[] getValues() {
+            return values;
+        }
+
+        /**
+         * Returns the function bound to the slot `slot` if the slot still holds
+         * its method, else null.
+         */
+        public Function getFunction(final int slot, final Object value) {
+            Function function = functions[slot];
+            return function != null && function.method == value ? function : null;
+        }
+    }
+
+    /**
+     * A registered function with the parts of its invocation which do not
+     * change from call to call.
+     */
+    static final class Function {
+        private final Method method;
+        private final int parameterCount;
+        private final Class<?>[] parameterTypes;
+        private final TypeDescriptor returnType;
+
+        private Function(final Method method) {
+            ReflectionUtils.makeAccessible(method);
+            this.method = method;
+            this.parameterTypes = method.getParameterTypes();
+            this.parameterCount = method.isVarArgs() ? -1 : parameterTypes.length;
+            this.returnType = new TypeDescriptor(new MethodParameter(method, -1));
+        }
+
+        /**
+         * Calls the function the way SpEL does: the arguments are converted to
+         * the parameter types, and the variable arguments are packed in an array.
+         */
+        private TypedValue invoke(final ExpressionState state, final String name,
+                final SpelNodeImpl[] children) throws EvaluationException {
+            Object[] arguments = new Object[children.length];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = children[i].getValueInternal(state).getValue();
+            }
+            ReflectionHelper.convertAllArguments(
+                    state.getEvaluationContext().getTypeConverter(), arguments, method);
+            if (parameterCount < 0) {
+                arguments = ReflectionHelper.setupArgumentsForVarargsInvocation(
+                        parameterTypes, arguments);
+            }
+            try {
+                return new TypedValue(method.invoke(null, arguments), returnType);
+            } catch (Exception e) {
+                throw new SpelEvaluationException(e,
+                        SpelMessage.EXCEPTION_DURING_FUNCTION_CALL, name, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * An expression bound to slots.
+     */
+    private static final class SlottedExpression extends SpelExpression {
+        private final VariableSlots slots;
+
+        public SlottedExpression(final String expressionString, final SpelNodeImpl ast,
+                final VariableSlots slots) {
+            super(expressionString, ast, CONFIGURATION);
+            this.slots = slots;
+        }
+    }
+
+    /**
+     * A variable reference which reads and assigns its slot.
+     */
+    private static final class SlotVariableReference extends VariableReference {
+        private final VariableSlots slots;
+        private final int slot;
+
+        public SlotVariableReference(final String name, final int pos,
+                final VariableSlots slots, final int slot) {
+            super(name, pos);
+            this.slots = slots;
+            this.slot = slot;
+        }
+
+        @Override
+        public TypedValue getValueInternal(final ExpressionState state)
+                throws SpelEvaluationException {
+            RootedEvaluationContext context = slots.contextOf(state);
+            if (context == null) {
+                return super.getValueInternal(state);
+            }
+            Object value = context.getSlot(slot);
+            return value == null ? TypedValue.NULL : new TypedValue(value);
+        }
+
+        @Override
+        public void setValue(final ExpressionState state, final Object value)
+                throws SpelEvaluationException {
+            RootedEvaluationContext context = slots.contextOf(state);
+            if (context == null) {
+                super.setValue(state, value);
+            } else {
+                context.setSlot(slot, value);
+            }
+        }
+    }
+
+    /**
+     * A function reference which calls the function bound to its slot.
+     */
+    private static final class SlotFunctionReference extends FunctionReference {
+        private final String name;
+        private final VariableSlots slots;
+        private final int slot;
+
+        public SlotFunctionReference(final String name, final int pos,
+                final VariableSlots slots, final int slot, final SpelNodeImpl[] arguments) {
+            super(name, pos, arguments);
+            this.name = name;
+            this.slots = slots;
+            this.slot = slot;
+        }
+
+        @Override
+        public TypedValue getValueInternal(final ExpressionState state)
+                throws EvaluationException {
+            RootedEvaluationContext context = slots.contextOf(state);
+            Function function = context == null ? null : context.getFunction(slot);
+            if (function == null
+                    || (function.parameterCount >= 0 && function.parameterCount != children.length)) {
+                return super.getValueInternal(state);
+            }
+            try {
+                return function.invoke(state, name, children);
+            } catch (SpelEvaluationException e) {
+                e.setPosition(getStartPosition());
+                throw e;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,9 @@
+package net.abhinavsarkar.spelhelper;
+
+public final class ChildTags {
+
+    public static String tag(final String s) {
+        return "Child";
+    }
+
+}
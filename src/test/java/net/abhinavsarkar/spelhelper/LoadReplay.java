@@ -0,0 +1,297 @@
+package net.abhinavsarkar.spelhelper;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a corpus of expressions against a {@link SpelHelper} from many
+ * threads and reports the throughput, the latency percentiles, the allocation
+ * rate and the hit ratios of the implicit method and property caches for
+ * every interval, and for the whole run at the end.
+ *
+ * Usage:
+ *
+ *     LoadReplay <corpus> [threads=4] [rate=0] [seconds=30] [interval=5]
+ *
+ * The corpus has one record per line: the expression to evaluate, a tab, and
+ * a SpEL expression creating the root object, like
+ * `new net.abhinavsarkar.spelhelper.Order('abc', 2, 3)`. The root is null if
+ * there is no tab. Blank lines and lines starting with `//` are skipped. The
+ * root objects are created once, before the replay.
+ *
+ * The threads go through the records in turn. With a rate, the total number
+ * of evaluations per second, the evaluations are scheduled at fixed intervals
+ * and their latencies are measured from the scheduled times, so that the
+ * stalls show up in the percentiles. A rate of 0 runs the threads flat out.
+ */
+public final class LoadReplay {
+
+    private static final int SUB_BUCKETS = 16;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final SpelHelper spelHelper = new SpelHelper();
+    private final List<String> expressions = new ArrayList<String>();
+    private final List<Object> roots = new ArrayList<Object>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Interval total = new Interval();
+    private volatile Interval current = new Interval();
+    private volatile boolean running = true;
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println(
+                    "Usage: LoadReplay <corpus> [threads=4] [rate=0] [seconds=30] [interval=5]");
+            System.exit(1);
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        double rate = args.length > 2 ? Double.parseDouble(args[2]) : 0;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+        int interval = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+
+        LoadReplay replay = new LoadReplay();
+        replay.load(args[0]);
+        System.out.println("Replaying " + replay.expressions.size() + " records from "
+                + threads + " threads at " + (rate > 0 ? rate + " evaluations/s" : "full speed")
+                + " for " + seconds + " s");
+        replay.run(threads, rate, seconds, interval);
+    }
+
+    private void load(final String file) throws IOException {
+        SpelHelper fixtures = new SpelHelper();
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().length() == 0 || line.startsWith("//")) {
+                    continue;
+                }
+                int tab = line.indexOf('\t');
+                expressions.add(tab < 0 ? line : line.substring(0, tab));
+                roots.add(tab < 0 ? null
+                        : fixtures.evalExpression(line.substring(tab + 1), (Object) null,
+                                Object.class));
+            }
+        } finally {
+            reader.close();
+        }
+        if (expressions.isEmpty()) {
+            throw new IllegalArgumentException("No records in " + file);
+        }
+    }
+
+    private void run(final int threads, final double rate, final int seconds,
+            final int interval) throws InterruptedException {
+        final long period = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) * threads / rate) : 0;
+        final CountDownLatch done = new CountDownLatch(threads);
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread("replay-" + i) {
+                @Override
+                public void run() {
+                    try {
+                        replay(period);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            };
+            worker.setDaemon(true);
+            workers.add(worker);
+        }
+
+        Snapshot start = snapshot(workers);
+        Snapshot last = start;
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        long end = start.time + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < end) {
+            long wait = Math.min(TimeUnit.SECONDS.toNanos(interval), end - System.nanoTime());
+            TimeUnit.NANOSECONDS.sleep(Math.max(wait, 0));
+            Interval finished = current;
+            current = new Interval();
+            Snapshot now = snapshot(workers);
+            report("t=" + TimeUnit.NANOSECONDS.toSeconds(now.time - start.time) + "s",
+                    finished, last, now);
+            last = now;
+        }
+        running = false;
+        done.await();
+        System.out.println();
+        report("total", total, start, last);
+    }
+
+    private void replay(final long period) {
+        long next = System.nanoTime();
+        int size = expressions.size();
+        while (running) {
+            long scheduled;
+            if (period > 0) {
+                scheduled = next;
+                next += period;
+                long wait = scheduled - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            } else {
+                scheduled = System.nanoTime();
+            }
+            int index = (int) (sequence.getAndIncrement() % size);
+            boolean failed = false;
+            try {
+                spelHelper.evalExpression(expressions.get(index), roots.get(index), Object.class);
+            } catch (RuntimeException e) {
+                failed = true;
+            }
+            long latency = System.nanoTime() - scheduled;
+            Interval interval = current;
+            interval.record(latency, failed);
+            total.record(latency, failed);
+        }
+    }
+
+    private Snapshot snapshot(final List<Thread> workers) {
+        Snapshot snapshot = new Snapshot();
+        snapshot.time = System.nanoTime();
+        snapshot.allocated = allocatedBytes(workers);
+        snapshot.methodHits = spelHelper.getImplicitMethodCacheHits();
+        snapshot.methodMisses = spelHelper.getImplicitMethodCacheMisses();
+        snapshot.propertyHits = spelHelper.getImplicitPropertyCacheHits();
+        snapshot.propertyMisses = spelHelper.getImplicitPropertyCacheMisses();
+        return snapshot;
+    }
+
+    /**
+     * Sums the bytes allocated by the worker threads, -1 if the JVM does not
+     * measure the allocations per thread.
+     */
+    private static long allocatedBytes(final List<Thread> workers) {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        if (!threadBean.isThreadAllocatedMemorySupported()
+                || !threadBean.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long allocated = 0;
+        for (Thread worker : workers) {
+            long bytes = threadBean.getThreadAllocatedBytes(worker.getId());
+            if (bytes > 0) {
+                allocated += bytes;
+            }
+        }
+        return allocated;
+    }
+
+    private static void report(final String label, final Interval interval,
+            final Snapshot from, final Snapshot to) {
+        double seconds = (to.time - from.time) / 1e9;
+        StringBuilder line = new StringBuilder(label);
+        line.append(String.format(" ops=%d rate=%.0f/s errors=%d",
+                interval.count.get(), interval.count.get() / seconds, interval.errors.get()));
+        line.append(String.format(" p50=%s p90=%s p99=%s p99.9=%s max=%s",
+                micros(interval.percentile(0.5)), micros(interval.percentile(0.9)),
+                micros(interval.percentile(0.99)), micros(interval.percentile(0.999)),
+                micros(interval.max.get())));
+        if (from.allocated >= 0 && to.allocated >= 0) {
+            line.append(String.format(" alloc=%.1fMB/s",
+                    (to.allocated - from.allocated) / seconds / (1 << 20)));
+        }
+        line.append(" methodCache=").append(ratio(
+                to.methodHits - from.methodHits, to.methodMisses - from.methodMisses));
+        line.append(" propertyCache=").append(ratio(
+                to.propertyHits - from.propertyHits, to.propertyMisses - from.propertyMisses));
+        System.out.println(line);
+    }
+
+    private static String micros(final long nanos) {
+        return String.format("%.1fus", nanos / 1e3);
+    }
+
+    private static String ratio(final long hits, final long misses) {
+        long lookups = hits + misses;
+        return lookups == 0 ? "n/a" : String.format("%.2f%%", 100.0 * hits / lookups);
+    }
+
+    private static final class Snapshot {
+        private long time;
+        private long allocated;
+        private long methodHits;
+        private long methodMisses;
+        private long propertyHits;
+        private long propertyMisses;
+    }
+
+    /**
+     * The latencies recorded in an interval, in a histogram with 16 buckets
+     * for every power of two, which keeps the percentiles within about 6%.
+     */
+    private static final class Interval {
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(final long latency, final boolean failed) {
+            long value = Math.max(latency, 1);
+            buckets.incrementAndGet(bucket(value));
+            count.incrementAndGet();
+            if (failed) {
+                errors.incrementAndGet();
+            }
+            long previous = max.get();
+            while (value > previous && !max.compareAndSet(previous, value)) {
+                previous = max.get();
+            }
+        }
+
+        public long percentile(final double fraction) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += buckets.get(i);
+            }
+            long rank = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank && seen > 0) {
+                    return Math.min(upperBound(i), max.get());
+                }
+            }
+            return 0;
+        }
+
+        private static int bucket(final long value) {
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            if (exponent < 4) {
+                return (int) value;
+            }
+            int mantissa = (int) (value >>> (exponent - 4)) & (SUB_BUCKETS - 1);
+            return (exponent - 3) * SUB_BUCKETS + mantissa;
+        }
+
+        private static long upperBound(final int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + 3;
+            long mantissa = bucket % SUB_BUCKETS;
+            return ((SUB_BUCKETS + mantissa + 1) << (exponent - 4)) - 1;
+        }
+    }
+
+}
@@ -0,0 +1,40 @@
+package net.abhinavsarkar.spelhelper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+public final class MapLoader implements BatchLoader<Object, Object> {
+
+    private final Map<Object, Object> store;
+    private final List<Set<Object>> batches = new ArrayList<Set<Object>>();
+
+    public MapLoader(final Map<Object, Object> store) {
+        this.store = store;
+    }
+
+    public Future<Map<Object, Object>> load(final Set<Object> keys) {
+        batches.add(keys);
+        FutureTask<Map<Object, Object>> task = new FutureTask<Map<Object, Object>>(
+                new Callable<Map<Object, Object>>() {
+                    public Map<Object, Object> call() {
+                        Map<Object, Object> values = new HashMap<Object, Object>();
+                        for (Object key : keys) {
+                            values.put(key, store.get(key));
+                        }
+                        return values;
+                    }
+                });
+        task.run();
+        return task;
+    }
+
+    public List<Set<Object>> batches() {
+        return batches;
+    }
+}
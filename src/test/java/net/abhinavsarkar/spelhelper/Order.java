@@ -0,0 +1,42 @@
+package net.abhinavsarkar.spelhelper;
+
+public final class Order {
+
+    private int reads;
+    private int price;
+    private int quantity;
+    private String name;
+
+    public Order(final String name, final int price, final int quantity) {
+        this.name = name;
+        this.price = price;
+        this.quantity = quantity;
+    }
+
+    public int getPrice() {
+        reads++;
+        return price;
+    }
+
+    public int getQuantity() {
+        reads++;
+        return quantity;
+    }
+
+    public void setQuantity(final int quantity) {
+        this.quantity = quantity;
+    }
+
+    public String getName() {
+        reads++;
+        return name;
+    }
+
+    public int reads() {
+        return reads;
+    }
+
+    public void resetReads() {
+        reads = 0;
+    }
+}
@@ -0,0 +1,31 @@
+package net.abhinavsarkar.spelhelper;
+
+import java.util.List;
+
+public final class Overloads {
+
+    public static String describe(final Object o) {
+        return "object";
+    }
+
+    public static String describe(final CharSequence s) {
+        return "charSequence";
+    }
+
+    public static String describe(final String s) {
+        return "string";
+    }
+
+    public static String describe(final String s, final int times) {
+        return "string:" + times;
+    }
+
+    public static String describe(final Number n) {
+        return "number";
+    }
+
+    public static String join(final List<?> list, final String... parts) {
+        return "join:" + parts.length;
+    }
+
+}
@@ -0,0 +1,25 @@
+package net.abhinavsarkar.spelhelper;
+
+public final class Scores {
+
+    public int hits = 7;
+    public long total = 3000000000L;
+    public double weight = 2.5;
+    public boolean active = true;
+
+    public int getBonus() {
+        return 11;
+    }
+
+    public String getName() {
+        return "scores";
+    }
+
+    public static double square(final double x) {
+        return x * x;
+    }
+
+    public static long add(final long x, final long y) {
+        return x + y;
+    }
+}
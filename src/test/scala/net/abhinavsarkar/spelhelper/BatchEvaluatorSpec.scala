@@ -0,0 +1,54 @@
+package net.abhinavsarkar.spelhelper
+
+import org.scalatest.junit.JUnitRunner
+import org.junit.runner.RunWith
+import org.scalatest.FlatSpec
+import org.scalatest.junit.ShouldMatchersForJUnit
+import java.util.{Arrays, HashMap}
+
+@RunWith(classOf[JUnitRunner])
+class BatchEvaluatorSpec extends FlatSpec with ShouldMatchersForJUnit {
+
+  def loader(entries: (Any, Any)*) = {
+    val store = new HashMap[Object, Object]
+    entries foreach { e => store.put(e._1.asInstanceOf[Object], e._2.asInstanceOf[Object]) }
+    new MapLoader(store)
+  }
+
+  def orders = Arrays.asList(new Order("abc", 1, 1), new Order("xyz", 1, 1),
+    new Order("abc", 2, 2))
+
+  "BatchEvaluator" should "load the keys of all the roots in one batch " in {
+    val tiers = loader("abc" -> "gold", "xyz" -> "silver")
+    val evaluator = new BatchEvaluator(new SpelHelper, 5).registerLoader("tiers", tiers)
+    evaluator.evalBatch("#tiers.load(name)", orders, classOf[String]) should equal (
+      Arrays.asList("gold", "silver", "gold"))
+    tiers.batches.size should equal (1)
+    tiers.batches.get(0).size should equal (2)
+  }
+
+  it should "load the dependent keys in later rounds " in {
+    val tiers = loader("abc" -> "gold", "xyz" -> "silver")
+    val names = loader("gold" -> "Gold tier")
+    val evaluator = new BatchEvaluator(new SpelHelper, 5)
+      .registerLoader("tiers", tiers).registerLoader("names", names)
+    evaluator.evalBatch("#names.load(#tiers.load(name)) ?: 'none'",
+      orders, classOf[String]) should equal (
+        Arrays.asList("Gold tier", "none", "Gold tier"))
+    tiers.batches.size should equal (1)
+    names.batches.size should equal (1)
+  }
+
+  it should "evaluate the expressions without lookups in one round " in {
+    new BatchEvaluator(new SpelHelper, 1).evalExpression(
+      "price * 2", new Order("abc", 3, 1), classOf[Int]) should equal (6)
+  }
+
+  it should "throw IllegalStateException if lookups are not resolved " in {
+    val evaluator = new BatchEvaluator(new SpelHelper, 1)
+      .registerLoader("tiers", loader())
+    evaluating { evaluator.evalExpression("#tiers.load(name)",
+      new Order("abc", 1, 1), classOf[String]) } should produce [IllegalStateException]
+  }
+
+}
@@ -0,0 +1,48 @@
+package net.abhinavsarkar.spelhelper
+
+import org.scalatest.junit.JUnitRunner
+import org.junit.runner.RunWith
+import org.scalatest.FlatSpec
+import org.scalatest.junit.ShouldMatchersForJUnit
+
+@RunWith(classOf[JUnitRunner])
+class ColumnarExpressionSpec extends FlatSpec with ShouldMatchersForJUnit {
+
+  def batch = new ColumnBatch(4)
+    .addColumn("price", Array(2.5, 4.0, 1.0, 3.0))
+    .addColumn("quantity", Array(2, 0, 7, 5))
+    .addColumn("active", Array(true, true, false, true))
+
+  "ColumnarExpression" should "evaluate arithmetic over the columns " in {
+    new SpelHelper().compileColumnarExpression("price * quantity + 1")
+      .evalDoubles(batch).toList should equal (List(6.0, 1.0, 8.0, 16.0))
+  }
+
+  it should "follow SpEL int arithmetic " in {
+    new SpelHelper().compileColumnarExpression("quantity / 2")
+      .evalLongs(batch).toList should equal (List(1L, 0L, 3L, 2L))
+  }
+
+  it should "give back the selection vector of the matching rows " in {
+    new SpelHelper().compileColumnarExpression("active and price * quantity > 5")
+      .select(batch).toList should equal (List(3))
+  }
+
+  it should "evaluate the branches of the ternary operator only for the chosen rows " in {
+    new SpelHelper().compileColumnarExpression("quantity == 0 ? 0 : 14 / quantity")
+      .evalLongs(batch).toList should equal (List(7L, 0L, 2L, 2L))
+  }
+
+  it should "evaluate the registered functions over the columns " in {
+    new SpelHelper().registerFunctionsFromClass(classOf[Scores])
+      .compileColumnarExpression("#square(price)")
+      .evalDoubles(batch).toList should equal (List(6.25, 16.0, 1.0, 9.0))
+  }
+
+  it should "reject the expressions not supported over columns " in {
+    evaluating {
+      new SpelHelper().compileColumnarExpression("name.length()").evalDoubles(batch)
+    } should produce [IllegalArgumentException]
+  }
+
+}
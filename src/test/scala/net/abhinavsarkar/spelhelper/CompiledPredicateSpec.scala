@@ -0,0 +1,43 @@
+package net.abhinavsarkar.spelhelper
+
+import org.scalatest.junit.JUnitRunner
+import org.junit.runner.RunWith
+import org.scalatest.FlatSpec
+import org.scalatest.junit.ShouldMatchersForJUnit
+
+@RunWith(classOf[JUnitRunner])
+class CompiledPredicateSpec extends FlatSpec with ShouldMatchersForJUnit {
+
+  "CompiledPredicate" should "test root objects against a boolean expression " in {
+    val predicate = new SpelHelper().compilePredicate[Order]("price * quantity > 5")
+    predicate.test(new Order("abc", 2, 3)) should be (true)
+    predicate.test(new Order("abc", 2, 2)) should be (false)
+  }
+
+  it should "evaluate functions and implicit methods " in {
+    val predicate = new SpelHelper()
+      .registerFunctionsFromClass(classOf[Functions])
+      .compilePredicate[Order]("#test(name) == 'abc' and #list(3,1).sorted[0] == 1")
+    predicate.test(new Order("abc", 2, 3)) should be (true)
+  }
+
+  it should "provide the evaluation context to the functions called " in {
+    new SpelHelper()
+      .registerFunctionsFromClass(classOf[Functions])
+      .compilePredicate[Object]("#testContext('check') == 'check'")
+      .test(new {}) should be (true)
+  }
+
+  it should "not share the variables set between evaluations " in {
+    val predicate = new SpelHelper()
+      .compilePredicate[Object]("#x == null and (#x = 1) == 1 and #x == 1")
+    predicate.test(new {}) should be (true)
+    predicate.test(new {}) should be (true)
+  }
+
+  "CompiledDoubleFunction" should "apply a numeric expression to root objects " in {
+    new SpelHelper().compileDoubleFunction[Order]("name.length() * price")
+      .applyAsDouble(new Order("abc", 2, 3)) should equal (6.0)
+  }
+
+}
@@ -0,0 +1,69 @@
+package net.abhinavsarkar.spelhelper
+
+import org.scalatest.junit.JUnitRunner
+import org.junit.runner.RunWith
+import org.scalatest.FlatSpec
+import org.scalatest.junit.ShouldMatchersForJUnit
+import java.util.concurrent.TimeUnit
+import java.util.{ArrayList, List => JList}
+
+@RunWith(classOf[JUnitRunner])
+class EvaluationBudgetSpec extends FlatSpec with ShouldMatchersForJUnit {
+
+  val budget = new EvaluationBudget(50, 5, 0, TimeUnit.SECONDS)
+
+  def numbers(size: Int) = {
+    val list = new ArrayList[Integer]
+    for (i <- 0 until size) list.add(i)
+    list
+  }
+
+  "SpelHelper" should "evaluate expressions within the budget " in {
+    new SpelHelper().evalExpression("#list('c','a','b').sorted.take(2)",
+      new Object, classOf[JList[String]], budget) should equal (
+        java.util.Arrays.asList("a", "b"))
+  }
+
+  it should "fail when the step budget is exceeded " in {
+    evaluating { new SpelHelper().evalExpression("#root.![#this * 2]",
+      numbers(100), classOf[Object], budget)
+    } should produce [EvaluationBudgetExceededException]
+  }
+
+  it should "fail when the collection size budget is exceeded " in {
+    evaluating { new SpelHelper().evalExpression("#root.sorted",
+      numbers(10), classOf[Object], budget)
+    } should produce [EvaluationBudgetExceededException]
+  }
+
+  it should "fail when the time budget is exceeded " in {
+    evaluating { new SpelHelper().evalExpression(
+      "#root.![#this.toString().length()]", numbers(1000000), classOf[Object],
+      new EvaluationBudget(0, 0, 1, TimeUnit.MILLISECONDS))
+    } should produce [EvaluationBudgetExceededException]
+  }
+
+  it should "keep the budget after a nested evaluation " in {
+    val spelHelper = new SpelHelper
+    evaluating { spelHelper.evalExpression(
+      "#root.evalExpression('1', #root, T(Object)) != null ? #list(1,2,3,4,5,6) : null",
+      spelHelper, classOf[Object], budget)
+    } should produce [EvaluationBudgetExceededException]
+  }
+
+  it should "evaluate a parsed expression within the budget of every evaluation " in {
+    val spelHelper = new SpelHelper
+    val expression = spelHelper.parseExpression("#root.![#this * 2].?[#this > 4].size()")
+    spelHelper.evalExpression(expression, numbers(10), classOf[Int], budget) should equal (7)
+    spelHelper.evalExpression(expression, numbers(10), classOf[Int], budget) should equal (7)
+    evaluating { spelHelper.evalExpression(expression, numbers(100), classOf[Int], budget)
+    } should produce [EvaluationBudgetExceededException]
+    spelHelper.evalExpression(expression, numbers(100), classOf[Int]) should equal (97)
+  }
+
+  it should "share the budget among multiple expressions " in {
+    new SpelHelper().evalExpressions(Array("#x = 2", "#x * 3"),
+      new Object, classOf[Int], budget) should equal (6)
+  }
+
+}
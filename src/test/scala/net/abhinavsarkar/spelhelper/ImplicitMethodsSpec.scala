@@ -5,6 +5,7 @@ import org.junit.runner.RunWith
 import org.scalatest.FlatSpec
 import org.scalatest.junit.ShouldMatchersForJUnit
 import java.util.{HashSet, Set => JSet, List => JList, ArrayList}
+import org.springframework.expression.spel.SpelEvaluationException
 
 @RunWith(classOf[JUnitRunner])
 class ImplicitMethodsSpec extends FlatSpec with ShouldMatchersForJUnit {
@@ -25,6 +26,15 @@ class ImplicitMethodsSpec extends FlatSpec with ShouldMatchersForJUnit {
       new {}, classOf[JList[String]]) should equal(list)
   }
 
+  it should "fail the evaluation for items which cannot be compared " in {
+    evaluating {
+      new SpelHelper().evalExpression("#list(1,'a',3).sorted", new {}, classOf[JList[Integer]])
+    } should produce [SpelEvaluationException]
+    evaluating {
+      new SpelHelper().evalExpression("#list(3,null,1).sorted", new {}, classOf[JList[Integer]])
+    } should produce [SpelEvaluationException]
+  }
+
   "Implicit Function 'reversed' on List" should
       "return a reversed list " in {
     val list: JList[String] = new ArrayList
@@ -48,5 +58,36 @@ class ImplicitMethodsSpec extends FlatSpec with ShouldMatchersForJUnit {
     new SpelHelper().evalExpression("#list('a','b','c','d').drop(2)",
       new {}, classOf[JList[String]]) should equal(list)
   }
-  
+
+  "Implicit Functions 'sorted' and 'take' chained on List" should
+      "return the smallest n items of a list in order " in {
+    val list: JList[Integer] = new ArrayList
+    List(1, 2, 3) foreach { list add _ }
+    new SpelHelper().evalExpression("#list(5,3,9,1,7,2,8,3).sorted.take(3)",
+      new {}, classOf[JList[Integer]]) should equal(list)
+  }
+
+  "Implicit Functions 'distinct' and 'sorted' chained on List" should
+      "return the distinct items of a list in order " in {
+    val list: JList[Integer] = new ArrayList
+    List(1, 2, 3) foreach { list add _ }
+    new SpelHelper().evalExpression("#list(3,1,3,2,1).distinct.sorted",
+      new {}, classOf[JList[Integer]]) should equal(list)
+  }
+
+  it should "keep the items which compare as equal but are not equal " in {
+    new SpelHelper().evalExpression(
+      "#list(new java.math.BigDecimal('1.0'), new java.math.BigDecimal('1.00'), "
+        + "new java.math.BigDecimal('1.0')).distinct.sorted.size()",
+      new {}, classOf[Int]) should equal(2)
+  }
+
+  "Implicit Functions 'reversed' and 'take' chained on List" should
+      "return the last n items of a list in reverse order " in {
+    val list: JList[Integer] = new ArrayList
+    List(5, 4) foreach { list add _ }
+    new SpelHelper().evalExpression("#list(1,2,3,4,5).reversed.take(2)",
+      new {}, classOf[JList[Integer]]) should equal(list)
+  }
+
 }
@@ -0,0 +1,59 @@
+package net.abhinavsarkar.spelhelper
+
+import org.scalatest.junit.JUnitRunner
+import org.junit.runner.RunWith
+import org.scalatest.FlatSpec
+import org.scalatest.junit.ShouldMatchersForJUnit
+import java.util.{Collections, HashSet, Set => JSet}
+
+@RunWith(classOf[JUnitRunner])
+class IncrementalEvaluatorSpec extends FlatSpec with ShouldMatchersForJUnit {
+
+  def evaluator = new IncrementalEvaluator[Object](new SpelHelper, classOf[Object],
+    Array("price * quantity", "name.toUpperCase()", "#list(#root).size()"): _*)
+
+  "IncrementalEvaluator" should "evaluate all expressions " in {
+    val results = evaluator.evaluate(new Order("abc", 2, 3))
+    results.get(0) should equal (6)
+    results.get(1) should equal ("ABC")
+    results.get(2) should equal (1)
+  }
+
+  it should "record the properties of the root read by the expressions " in {
+    val incrementalEvaluator = evaluator
+    incrementalEvaluator.evaluate(new Order("abc", 2, 3))
+    val set: JSet[String] = new HashSet
+    set add "price"; set add "quantity"
+    incrementalEvaluator.getDependencies(0) should equal (set)
+    incrementalEvaluator.getDependencies(1) should equal (Collections.singleton("name"))
+  }
+
+  it should "treat expressions using the root as a value as dependent on everything " in {
+    val incrementalEvaluator = evaluator
+    incrementalEvaluator.evaluate(new Order("abc", 2, 3))
+    incrementalEvaluator.getDependencies(2) should be (null)
+  }
+
+  it should "re-evaluate only the expressions depending on the changed properties " in {
+    val incrementalEvaluator = evaluator
+    val order = new Order("abc", 2, 3)
+    incrementalEvaluator.evaluate(order)
+    order.setQuantity(5)
+    order.resetReads
+    val results = incrementalEvaluator.reevaluateIfChanged(
+      order, Collections.singleton("quantity"))
+    results.get(0) should equal (10)
+    results.get(1) should equal ("ABC")
+    order.reads should equal (2)
+  }
+
+  it should "re-evaluate all the expressions for a different root " in {
+    val incrementalEvaluator = evaluator
+    incrementalEvaluator.evaluate(new Order("abc", 2, 3))
+    val results = incrementalEvaluator.reevaluateIfChanged(
+      new Order("xyz", 1, 1), Collections.emptySet[String])
+    results.get(0) should equal (1)
+    results.get(1) should equal ("XYZ")
+  }
+
+}
@@ -0,0 +1,80 @@
+package net.abhinavsarkar.spelhelper
+
+import org.scalatest.junit.JUnitRunner
+import org.junit.runner.RunWith
+import org.scalatest.FlatSpec
+import org.scalatest.junit.ShouldMatchersForJUnit
+import java.io.File
+import java.util.{Map => JMap, HashMap}
+
+@RunWith(classOf[JUnitRunner])
+class MappedRuleStoreSpec extends FlatSpec with ShouldMatchersForJUnit {
+
+  def rules: JMap[String,String] = {
+    val rules: JMap[String,String] = new HashMap
+    rules.put("one", "1 + 0")
+    rules.put("upper", "'check'.toUpperCase()")
+    // "Aa" and "BB" have the same hash code
+    rules.put("Aa", "'Aa'")
+    rules.put("BB", "'BB'")
+    rules
+  }
+
+  def tempFile = {
+    val file = File.createTempFile("rules", ".dat")
+    file.deleteOnExit
+    file
+  }
+
+  "MappedRuleStore" should "evaluate rules by their ids " in {
+    val store = MappedRuleStore.create(tempFile, rules, new SpelHelper, 10)
+    store.evalRule("one", new {}, classOf[Int]) should equal (1)
+    store.evalRule("upper", new {}, classOf[String]) should equal ("CHECK")
+    store.size should equal (4)
+    store.close
+  }
+
+  it should "distinguish the rules with colliding id hashes " in {
+    val store = MappedRuleStore.create(tempFile, rules, new SpelHelper, 10)
+    store.evalRule("Aa", new {}, classOf[String]) should equal ("Aa")
+    store.evalRule("BB", new {}, classOf[String]) should equal ("BB")
+    store.close
+  }
+
+  it should "parse cold rules again from the file " in {
+    val store = MappedRuleStore.create(tempFile, rules, new SpelHelper, 1)
+    store.evalRule("one", new {}, classOf[Int]) should equal (1)
+    store.evalRule("upper", new {}, classOf[String]) should equal ("CHECK")
+    store.evalRule("one", new {}, classOf[Int]) should equal (1)
+    store.close
+  }
+
+  it should "reopen a previously written file " in {
+    val file = tempFile
+    MappedRuleStore.create(file, rules, new SpelHelper, 10).close
+    val store = MappedRuleStore.open(file, new SpelHelper, 10)
+    store.getExpressionString("upper") should equal ("'check'.toUpperCase()")
+    store.close
+  }
+
+  it should "return null for the expression string of an unknown rule " in {
+    val store = MappedRuleStore.create(tempFile, rules, new SpelHelper, 10)
+    store.getExpressionString("unknown") should be (null)
+    store.close
+  }
+
+  it should "throw IllegalArgumentException when evaluating an unknown rule " in {
+    val store = MappedRuleStore.create(tempFile, rules, new SpelHelper, 10)
+    evaluating { store.evalRule("unknown", new {}, classOf[Int])
+      } should produce [IllegalArgumentException]
+    store.close
+  }
+
+  it should "throw IllegalArgumentException when creating a store with a null rule id " in {
+    val withNullId = rules
+    withNullId.put(null, "'null'")
+    evaluating { MappedRuleStore.create(tempFile, withNullId, new SpelHelper, 10)
+      } should produce [IllegalArgumentException]
+  }
+
+}
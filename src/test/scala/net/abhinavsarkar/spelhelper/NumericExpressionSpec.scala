@@ -0,0 +1,83 @@
+package net.abhinavsarkar.spelhelper
+
+import org.scalatest.junit.JUnitRunner
+import org.junit.runner.RunWith
+import org.scalatest.FlatSpec
+import org.scalatest.junit.ShouldMatchersForJUnit
+import java.lang.management.ManagementFactory
+
+@RunWith(classOf[JUnitRunner])
+class NumericExpressionSpec extends FlatSpec with ShouldMatchersForJUnit {
+
+  val spelHelper = new SpelHelper().registerFunctionsFromClass(classOf[Scores])
+
+  "NumericExpression" should "evaluate int arithmetic like SpEL " in {
+    spelHelper.evalLong("7 / 2 + 7 % 3", new Scores) should equal (4L)
+    spelHelper.evalLong("2147483647 + 1", new Scores) should equal (-2147483648L)
+  }
+
+  it should "widen to long and double like SpEL " in {
+    spelHelper.evalLong("hits + total", new Scores) should equal (3000000007L)
+    spelHelper.evalDouble("hits * weight", new Scores) should equal (17.5)
+  }
+
+  it should "evaluate comparisons and logical operators " in {
+    spelHelper.evalBoolean("hits > 5 and active", new Scores) should be (true)
+    spelHelper.evalBoolean("!active or hits != 7", new Scores) should be (false)
+    spelHelper.evalBoolean("hits == 7.0", new Scores) should be (true)
+  }
+
+  it should "evaluate the ternary operator " in {
+    spelHelper.evalDouble("active ? weight : 1", new Scores) should equal (2.5)
+  }
+
+  it should "read getters and call functions with primitive signatures " in {
+    spelHelper.evalLong("bonus + #add(hits, 2)", new Scores) should equal (20L)
+    spelHelper.evalDouble("#square(weight)", new Scores) should equal (6.25)
+  }
+
+  it should "compile primitive expressions to the primitive path " in {
+    spelHelper.compileNumericExpression("hits * weight + #square(2)")
+      .isCompiledFor(classOf[Scores]) should be (true)
+  }
+
+  it should "fall back to SpEL for other expressions " in {
+    val expression = spelHelper.compileNumericExpression("name.length() + 1")
+    expression.isCompiledFor(classOf[Scores]) should be (false)
+    expression.evalLong(new Scores) should equal (7L)
+  }
+
+  it should "compile again when functions are registered afterwards " in {
+    val helper = new SpelHelper
+    val expression = helper.compileNumericExpression("#square(weight)")
+    expression.isCompiledFor(classOf[Scores]) should be (false)
+    helper.registerFunctionsFromClass(classOf[Scores])
+    expression.isCompiledFor(classOf[Scores]) should be (true)
+    expression.evalDouble(new Scores) should equal (6.25)
+  }
+
+  it should "read public fields without allocating " in {
+    ManagementFactory.getThreadMXBean match {
+      case threadBean: com.sun.management.ThreadMXBean
+          if threadBean.isThreadAllocatedMemorySupported
+            && threadBean.isThreadAllocatedMemoryEnabled =>
+        val expression = spelHelper.compileNumericExpression("hits * weight + total")
+        val scores = new Scores
+        def run() = {
+          var i = 0
+          while (i < 10000) {
+            expression.evalDouble(scores)
+            i += 1
+          }
+        }
+        run()
+        val threadId = Thread.currentThread.getId
+        val before = threadBean.getThreadAllocatedBytes(threadId)
+        run()
+        val allocated = threadBean.getThreadAllocatedBytes(threadId) - before
+        (allocated < 1024) should be (true)
+      case _ =>
+    }
+  }
+
+}
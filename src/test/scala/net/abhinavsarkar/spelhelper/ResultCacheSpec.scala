@@ -0,0 +1,47 @@
+package net.abhinavsarkar.spelhelper
+
+import org.scalatest.junit.JUnitRunner
+import org.junit.runner.RunWith
+import org.scalatest.FlatSpec
+import org.scalatest.junit.ShouldMatchersForJUnit
+import java.util.concurrent.TimeUnit
+
+@RunWith(classOf[JUnitRunner])
+class ResultCacheSpec extends FlatSpec with ShouldMatchersForJUnit {
+
+  def cache = new ResultCache(new SpelHelper, 2, 0, TimeUnit.SECONDS)
+
+  "ResultCache" should "not evaluate a cached expression again " in {
+    val resultCache = cache
+    val order = new Order("abc", 2, 3)
+    resultCache.evalExpression("price * quantity", order, classOf[Int]) should equal (6)
+    order.resetReads
+    resultCache.evalExpression("price * quantity", order, classOf[Int]) should equal (6)
+    order.reads should equal (0)
+  }
+
+  it should "use the fingerprint in place of the root " in {
+    val resultCache = cache
+    resultCache.evalExpression("name", new Order("abc", 2, 3), "v1", classOf[String])
+    resultCache.evalExpression("name", new Order("xyz", 2, 3), "v1",
+      classOf[String]) should equal ("abc")
+    resultCache.invalidate("v1")
+    resultCache.evalExpression("name", new Order("xyz", 2, 3), "v1",
+      classOf[String]) should equal ("xyz")
+  }
+
+  it should "evict the least recently used results " in {
+    val resultCache = cache
+    List("1", "2", "3") foreach { resultCache.evalExpression(_, null, "", classOf[Int]) }
+    resultCache.size should equal (2)
+  }
+
+  it should "cache only the deterministic expressions " in {
+    val resultCache = cache
+    resultCache.isCacheable("#list(3,1,2).sorted.take(2)") should be (true)
+    resultCache.isCacheable("new java.util.Date()") should be (false)
+    resultCache.isCacheable("T(java.lang.System).nanoTime()") should be (false)
+    resultCache.isCacheable("(#x = 1) + 1") should be (false)
+  }
+
+}
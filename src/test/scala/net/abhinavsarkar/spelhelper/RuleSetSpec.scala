@@ -0,0 +1,48 @@
+package net.abhinavsarkar.spelhelper
+
+import org.scalatest.junit.JUnitRunner
+import org.junit.runner.RunWith
+import org.scalatest.FlatSpec
+import org.scalatest.junit.ShouldMatchersForJUnit
+import java.util.BitSet
+
+@RunWith(classOf[JUnitRunner])
+class RuleSetSpec extends FlatSpec with ShouldMatchersForJUnit {
+
+  def ruleSet = new RuleSet(new SpelHelper,
+    Array("price > 10", "price > 10 and quantity > 1", "price * quantity > 100",
+      "name.toUpperCase().startsWith('W')", "!(price > 10)"): _*)
+
+  "RuleSet" should "return the indices of the matching rules " in {
+    val matched = new BitSet
+    matched set 0; matched set 1; matched set 3
+    ruleSet.evalRules(new Order("widget", 20, 3)) should equal (matched)
+  }
+
+  it should "evaluate the shared sub-expressions only once " in {
+    val order = new Order("widget", 20, 3)
+    order.resetReads
+    ruleSet.evalRules(order)
+    order.reads should equal (3)
+  }
+
+  it should "count the distinct sub-expressions of the rules " in {
+    new RuleSet(new SpelHelper,
+      Array("price > 10", "price > 10 and quantity > 1"): _*)
+      .getSubexpressionCount should equal (7)
+  }
+
+  it should "not share null safe and other navigations " in {
+    val rules = new RuleSet(new SpelHelper,
+      Array("name?.toUpperCase() == null", "name.toUpperCase() == null"): _*)
+    rules.getSubexpressionCount should equal (6)
+  }
+
+  it should "evaluate the rules assigning variables on their own " in {
+    val matched = new BitSet
+    matched set 0; matched set 1
+    new RuleSet(new SpelHelper, Array("(#x = 4) > 3", "#x == null"): _*)
+      .evalRules(new Order("widget", 20, 3)) should equal (matched)
+  }
+
+}
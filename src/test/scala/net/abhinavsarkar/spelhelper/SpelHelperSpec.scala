@@ -64,6 +64,32 @@ class SpelHelperSpec extends FlatSpec with ShouldMatchersForJUnit {
         "'check'.test()", new {}, classOf[String]) should equal ("check")
   }
 
+  it should "register all overloads of implicit methods " in {
+    new SpelHelper()
+      .registerImplicitMethodsFromClass(classOf[Overloads])
+      .lookupImplicitMethods(classOf[String], "describe").size should equal (2)
+  }
+
+  it should "evaluate the most specific overload of implicit methods " in {
+    val spelHelper = new SpelHelper()
+      .registerImplicitMethodsFromClass(classOf[Overloads])
+    spelHelper.evalExpression(
+      "'check'.describe()", new {}, classOf[String]) should equal ("string")
+    spelHelper.evalExpression(
+      "'check'.describe(2)", new {}, classOf[String]) should equal ("string:2")
+    spelHelper.evalExpression(
+      "(1).describe()", new {}, classOf[String]) should equal ("number")
+    spelHelper.evalExpression(
+      "#list(1).describe()", new {}, classOf[String]) should equal ("object")
+  }
+
+  it should "evaluate varargs implicit methods " in {
+    new SpelHelper()
+      .registerImplicitMethodsFromClass(classOf[Overloads])
+      .evalExpression(
+        "#list(1).join('a','b')", new {}, classOf[String]) should equal ("join:2")
+  }
+
   it should "evaluate implicit constructors " in {
     new SpelHelper()
       .registerConstructorsFromClass(classOf[Functions])
@@ -99,5 +125,54 @@ class SpelHelperSpec extends FlatSpec with ShouldMatchersForJUnit {
           "from SpEL expression " in {
     SpelHelper.getCurrentContext should be (null)
   }
+
+  it should "see the registrations of its parent " in {
+    val parent = new SpelHelper().registerFunctionsFromClass(classOf[Functions])
+    val child = new SpelHelper(parent)
+      .registerImplicitMethodsFromClass(classOf[Overloads])
+    child.evalExpression(
+      "#test('check')", new {}, classOf[String]) should equal ("check")
+    parent.lookupImplicitMethods(classOf[Object], "describe").isEmpty should be (true)
+  }
+
+  it should "see the registrations made with its parent later " in {
+    val parent = new SpelHelper()
+    val child = new SpelHelper(parent)
+    parent.registerFunctionsFromClass(classOf[Functions])
+    child.evalExpression(
+      "#test('check')", new {}, classOf[String]) should equal ("check")
+  }
+
+  it should "override the implicit methods of its parent " in {
+    val parent = new SpelHelper().registerImplicitMethodsFromClass(classOf[ParentTags])
+    val child = new SpelHelper(parent).registerImplicitMethodsFromClass(classOf[ChildTags])
+    child.evalExpression("'x'.tag()", new {}, classOf[String]) should equal ("Child")
+    child.lookupImplicitMethod("java.lang.String.tag") should equal (
+      classOf[ChildTags].getMethod("tag", classOf[String]))
+    parent.evalExpression("'x'.tag()", new {}, classOf[String]) should equal ("Parent")
+  }
+
+  it should "not share implicit properties with the other instances " in {
+    val first = new SpelHelper().registerImplicitMethodsFromClass(classOf[ParentTags])
+    val second = new SpelHelper().registerImplicitMethodsFromClass(classOf[ChildTags])
+    first.evalExpression("'x'.tag", new {}, classOf[String]) should equal ("Parent")
+    second.evalExpression("'x'.tag", new {}, classOf[String]) should equal ("Child")
+    evaluating { new SpelHelper().evalExpression("'x'.tag", new {}, classOf[String])
+    } should produce [SpelEvaluationException]
+  }
+
+  it should "see the functions registered after a parsed expression is evaluated " in {
+    val spelHelper = new SpelHelper
+    val expression = spelHelper.parseExpression("#test('check')")
+    evaluating { spelHelper.evalExpression(expression, new {}, classOf[String])
+    } should produce [SpelEvaluationException]
+    spelHelper.registerFunctionsFromClass(classOf[Functions])
+    spelHelper.evalExpression(expression, new {}, classOf[String]) should equal ("check")
+  }
+
+  it should "throw IllegalStateException when registering with a frozen instance " in {
+    evaluating { new SpelHelper().freeze()
+      .registerFunctionsFromClass(classOf[Functions]) } should produce [IllegalStateException]
+  }
   
 }